@@ -0,0 +1,180 @@
+package com.morristaedt.mirror.modules;
+
+import android.os.AsyncTask;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs fetches that block until told otherwise, driving the orchestrator from the main thread
+ * the way the modules do and waiting for its fan-in on the test thread
+ */
+@RunWith(AndroidJUnit4.class)
+public class FetchOrchestratorTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final long DEADLINE_MILLIS = 300;
+
+    /**
+     * Blocks until released, cancelled or interrupted, and records which callback it got
+     */
+    private static class BlockingFetch extends AsyncTask<Void, Void, Boolean> {
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        final CountDownLatch mCallback = new CountDownLatch(1);
+        volatile boolean mInterrupted;
+        volatile boolean mPostExecuted;
+        volatile boolean mCancelled;
+
+        @Override
+        protected Boolean doInBackground(Void... params) {
+            mStarted.countDown();
+            try {
+                return mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                mInterrupted = true;
+                return false;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Boolean released) {
+            mPostExecuted = true;
+            mCallback.countDown();
+        }
+
+        @Override
+        protected void onCancelled(Boolean released) {
+            mCancelled = true;
+            mCallback.countDown();
+        }
+    }
+
+    private FetchOrchestrator mOrchestrator;
+    private final BlockingQueue<List<FetchOrchestrator.Result>> mBatches = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() {
+        mOrchestrator = new FetchOrchestrator();
+        mOrchestrator.setFanInListener(new FetchOrchestrator.FanInListener() {
+            @Override
+            public void onFetchesFinished(List<FetchOrchestrator.Result> results) {
+                mBatches.add(results);
+            }
+        });
+    }
+
+    @Test
+    public void completedFetchIsReported() throws InterruptedException {
+        BlockingFetch fetch = new BlockingFetch();
+        fetch.mRelease.countDown();
+        execute("news", 5000, fetch);
+
+        List<FetchOrchestrator.Result> batch = nextBatch();
+        assertEquals(1, batch.size());
+        assertEquals("news", batch.get(0).getModule());
+        assertEquals(FetchOrchestrator.Outcome.COMPLETED, batch.get(0).getOutcome());
+        assertTrue(fetch.mCallback.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(fetch.mPostExecuted);
+    }
+
+    @Test
+    public void missedDeadlineCancelsTheFetch() throws InterruptedException {
+        BlockingFetch fetch = new BlockingFetch();
+        execute("xkcd", DEADLINE_MILLIS, fetch);
+
+        // Reported at the deadline, without waiting for the fetch to notice
+        List<FetchOrchestrator.Result> batch = nextBatch();
+        assertEquals(1, batch.size());
+        assertEquals(FetchOrchestrator.Outcome.TIMED_OUT, batch.get(0).getOutcome());
+        assertTrue(batch.get(0).getTotalMillis() >= DEADLINE_MILLIS);
+
+        // cancel(true) interrupts the blocked fetch and the module gets onCancelled
+        assertTrue(fetch.mCallback.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(fetch.isCancelled());
+        assertTrue(fetch.mInterrupted);
+        assertTrue(fetch.mCancelled);
+        assertFalse(fetch.mPostExecuted);
+    }
+
+    @Test
+    public void batchCompletesWithCancelledAndTimedOutFetches() throws InterruptedException {
+        BlockingFetch completed = new BlockingFetch();
+        BlockingFetch cancelled = new BlockingFetch();
+        BlockingFetch timedOut = new BlockingFetch();
+        execute("stock", 5000, completed);
+        execute("calendar", 5000, cancelled);
+        execute("forecast", DEADLINE_MILLIS, timedOut);
+
+        completed.mRelease.countDown();
+        assertTrue(cancelled.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        cancel(cancelled);
+
+        // One batch once the last of them is done, however each ended
+        List<FetchOrchestrator.Result> batch = nextBatch();
+        assertEquals(3, batch.size());
+        Map<String, FetchOrchestrator.Outcome> outcomes = new HashMap<>();
+        for (FetchOrchestrator.Result result : batch) {
+            outcomes.put(result.getModule(), result.getOutcome());
+        }
+        assertEquals(FetchOrchestrator.Outcome.COMPLETED, outcomes.get("stock"));
+        assertEquals(FetchOrchestrator.Outcome.CANCELLED, outcomes.get("calendar"));
+        assertEquals(FetchOrchestrator.Outcome.TIMED_OUT, outcomes.get("forecast"));
+        for (int i = 1; i < batch.size(); i++) {
+            assertTrue("Slowest first", batch.get(i - 1).getTotalMillis() >= batch.get(i).getTotalMillis());
+        }
+
+        // The timed out fetch returning late doesn't make a batch of its own
+        assertTrue(timedOut.mCallback.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNull(mBatches.poll(DEADLINE_MILLIS, TimeUnit.MILLISECONDS));
+
+        BlockingFetch next = new BlockingFetch();
+        next.mRelease.countDown();
+        execute("news", 5000, next);
+        batch = nextBatch();
+        assertEquals(1, batch.size());
+        assertEquals("news", batch.get(0).getModule());
+        assertEquals(4, mOrchestrator.getLatestResults().size());
+    }
+
+    private void execute(final String module, final long deadlineMillis, final BlockingFetch fetch) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mOrchestrator.execute(module, deadlineMillis, fetch);
+            }
+        });
+    }
+
+    private void cancel(final BlockingFetch fetch) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                fetch.cancel(true);
+            }
+        });
+    }
+
+    private List<FetchOrchestrator.Result> nextBatch() throws InterruptedException {
+        List<FetchOrchestrator.Result> batch = mBatches.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("No fan-in", batch);
+        return batch;
+    }
+}
@@ -0,0 +1,110 @@
+package com.morristaedt.mirror.vision;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Runs real frames through the same downscale and rotation the pipeline does, and checks a bright
+ * patch found on the small upright image maps back onto the patch in the full resolution frame
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetectionMappingTest {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int DETECTION_WIDTH = 320;
+
+    // On multiples of the scale factor, so downscaling keeps its edges sharp
+    private static final Rect FACE = new Rect(400, 160, 240, 200);
+
+    private Mat mFrame;
+    private Mat mRotated;
+    private DetectionScaler mScaler;
+
+    @BeforeClass
+    public static void loadOpenCV() throws InterruptedException {
+        OpenCVTestLoader.load();
+    }
+
+    @Before
+    public void setUp() {
+        mFrame = Mat.zeros(HEIGHT, WIDTH, CvType.CV_8UC1);
+        mFrame.submat(FACE).setTo(new Scalar(255));
+        mRotated = new Mat();
+        mScaler = new DetectionScaler(DETECTION_WIDTH);
+    }
+
+    @After
+    public void tearDown() {
+        mFrame.release();
+        mRotated.release();
+        mScaler.release();
+    }
+
+    @Test
+    public void scalesToTheDetectionWidth() {
+        Mat scaled = mScaler.scale(mFrame);
+        assertEquals(DETECTION_WIDTH, scaled.cols());
+        assertEquals(HEIGHT * DETECTION_WIDTH / WIDTH, scaled.rows());
+        assertEquals(4.0, mScaler.getScale(), 0);
+        assertEquals(30, mScaler.toScaled(120));
+    }
+
+    @Test
+    public void narrowFramesAreNotScaled() {
+        Mat small = Mat.zeros(180, 240, CvType.CV_8UC1);
+        assertSame(small, mScaler.scale(small));
+        assertEquals(1.0, mScaler.getScale(), 0);
+        small.release();
+    }
+
+    @Test
+    public void mapsBackWithoutRotation() {
+        assertEquals(FACE, findAndMapBack(0));
+    }
+
+    @Test
+    public void mapsBackFromQuarterTurnCounterClockwise() {
+        assertEquals(FACE, findAndMapBack(90));
+    }
+
+    @Test
+    public void mapsBackFromHalfTurn() {
+        assertEquals(FACE, findAndMapBack(180));
+    }
+
+    @Test
+    public void mapsBackFromQuarterTurnClockwise() {
+        assertEquals(FACE, findAndMapBack(270));
+    }
+
+    /**
+     * @return Where the patch on the small upright image is in the full resolution frame
+     */
+    private Rect findAndMapBack(int angle) {
+        Mat upright = FrameRotator.rotate(mScaler.scale(mFrame), mRotated, angle);
+
+        MatOfPoint points = new MatOfPoint();
+        Core.findNonZero(upright, points);
+        Rect[] found = {Imgproc.boundingRect(points)};
+        points.release();
+
+        DetectionScaler.toFrame(found, mScaler.getScale());
+        return FrameRotator.toSource(found, angle, mFrame.cols(), mFrame.rows())[0];
+    }
+}
@@ -0,0 +1,145 @@
+package com.morristaedt.mirror.vision;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Follows a textured face across small detection images, anchored the way the worker anchors it:
+ * with an image from a few frames before the ones tracked
+ */
+@RunWith(AndroidJUnit4.class)
+public class FaceTrackerTest {
+
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final int FACE_SIZE = 32;
+    private static final int STEP = 2;
+
+    private Mat mBackground;
+    private Mat mFace;
+    private Mat mImage;
+    private FaceTracker mTracker;
+
+    @BeforeClass
+    public static void loadOpenCV() throws InterruptedException {
+        OpenCVTestLoader.load();
+    }
+
+    @Before
+    public void setUp() {
+        Core.setRNGSeed(3);
+        mBackground = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+        Core.randu(mBackground, 0, 120);
+        Imgproc.GaussianBlur(mBackground, mBackground, new Size(5, 5), 0);
+        mFace = new Mat(FACE_SIZE, FACE_SIZE, CvType.CV_8UC1);
+        Core.randu(mFace, 100, 255);
+        Imgproc.GaussianBlur(mFace, mFace, new Size(3, 3), 0);
+        mImage = new Mat();
+        mTracker = new FaceTracker();
+    }
+
+    @After
+    public void tearDown() {
+        mTracker.release();
+        mBackground.release();
+        mFace.release();
+        mImage.release();
+    }
+
+    @Test
+    public void followsTheFaceFromTheImageItWasDetectedIn() {
+        Mat detected = render(faceAt(40)).clone();
+
+        // The result arrives two frames later, the face kept moving meanwhile
+        mTracker.anchor(new Rect[]{faceAt(40)}, 1.0, detected);
+        for (int frame = 1; frame <= 6; frame++) {
+            Rect[] faces = mTracker.track(render(faceAt(40 + 2 * STEP + frame * STEP)), 1.0);
+            assertNotNull("Lost on frame " + frame, faces);
+            assertEquals(faceAt(40 + 2 * STEP + frame * STEP), faces[0]);
+        }
+        assertTrue(mTracker.getLastConfidence() > 0.9);
+        detected.release();
+    }
+
+    @Test
+    public void reportsInFrameCoordinates() {
+        Mat detected = render(faceAt(40)).clone();
+        mTracker.anchor(new Rect[]{scaled(faceAt(40), 4)}, 4.0, detected);
+
+        Rect[] faces = mTracker.track(render(faceAt(44)), 4.0);
+        assertNotNull(faces);
+        assertEquals(scaled(faceAt(44), 4), faces[0]);
+        detected.release();
+    }
+
+    @Test
+    public void followsTheLargestFace() {
+        Mat detected = render(faceAt(40)).clone();
+        mTracker.anchor(new Rect[]{new Rect(120, 80, 8, 8), faceAt(40)}, 1.0, detected);
+
+        Rect[] faces = mTracker.track(render(faceAt(44)), 1.0);
+        assertNotNull(faces);
+        assertEquals(faceAt(44), faces[0]);
+        detected.release();
+    }
+
+    @Test
+    public void faceLeavingIsLost() {
+        Mat detected = render(faceAt(40)).clone();
+        mTracker.anchor(new Rect[]{faceAt(40)}, 1.0, detected);
+
+        mBackground.copyTo(mImage);
+        assertNull(mTracker.track(mImage, 1.0));
+        assertFalse(mTracker.isTracking());
+        assertEquals(1, mTracker.getFramesLost());
+        detected.release();
+    }
+
+    @Test
+    public void noFacesStopsTracking() {
+        Mat detected = render(faceAt(40)).clone();
+        mTracker.anchor(new Rect[]{faceAt(40)}, 1.0, detected);
+        assertTrue(mTracker.isTracking());
+
+        mTracker.anchor(new Rect[0], 1.0, detected);
+        assertFalse(mTracker.isTracking());
+        assertEquals(0, mTracker.track(render(faceAt(40)), 1.0).length);
+        detected.release();
+    }
+
+    private Rect faceAt(int x) {
+        return new Rect(x, 40, FACE_SIZE, FACE_SIZE);
+    }
+
+    private static Rect scaled(Rect rect, int scale) {
+        return new Rect(rect.x * scale, rect.y * scale, rect.width * scale, rect.height * scale);
+    }
+
+    /**
+     * @return The detection image with the face at the given place, valid until the next call
+     */
+    private Mat render(Rect face) {
+        mBackground.copyTo(mImage);
+        Mat region = mImage.submat(face);
+        mFace.copyTo(region);
+        region.release();
+        return mImage;
+    }
+}
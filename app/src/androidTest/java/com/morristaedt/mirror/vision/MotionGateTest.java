@@ -0,0 +1,117 @@
+package com.morristaedt.mirror.vision;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the motion gate over a scripted sequence of someone walking up to the mirror, standing
+ * still in front of it and walking off again
+ */
+@RunWith(AndroidJUnit4.class)
+public class MotionGateTest {
+
+    // MirrorActivity's defaults
+    private static final double THRESHOLD = 0.02;
+    private static final double LEARNING_RATE = 0.05;
+
+    private static final int WALK_FRAMES = 15;
+
+    private SceneFrames mScene;
+    private MotionGate mGate;
+
+    @BeforeClass
+    public static void loadOpenCV() throws InterruptedException {
+        OpenCVTestLoader.load();
+    }
+
+    @Before
+    public void setUp() {
+        mScene = new SceneFrames(42);
+        mGate = new MotionGate(THRESHOLD, LEARNING_RATE);
+    }
+
+    @After
+    public void tearDown() {
+        mGate.release();
+        mScene.release();
+    }
+
+    @Test
+    public void firstFrameCountsAsMotion() {
+        assertTrue(mGate.update(mScene.render(null)));
+    }
+
+    @Test
+    public void sensorNoiseInAnEmptyRoomIsNotMotion() {
+        mGate.update(mScene.render(null));
+        for (int i = 0; i < 100; i++) {
+            assertFalse("Frame " + i, mGate.update(mScene.render(null)));
+        }
+    }
+
+    @Test
+    public void walkingInIsMotion() {
+        settle();
+        for (int i = 1; i <= WALK_FRAMES; i++) {
+            assertTrue("Frame " + i, mGate.update(mScene.render(SceneFrames.walkingIn(i))));
+        }
+    }
+
+    @Test
+    public void someoneStandingStillFadesIntoTheBackground() {
+        settle();
+        walkIn();
+
+        int still = 0;
+        while (mGate.update(mScene.render(SceneFrames.walkingIn(WALK_FRAMES)))) {
+            assertTrue("Still motion after " + still + " frames of standing still", ++still < 100);
+        }
+        // Which is why the pipeline keeps detecting for a while after the last face
+        for (int i = 0; i < 100; i++) {
+            assertFalse(mGate.update(mScene.render(SceneFrames.walkingIn(WALK_FRAMES))));
+        }
+    }
+
+    @Test
+    public void walkingOffIsMotion() {
+        settle();
+        walkIn();
+        for (int i = 0; i < 200; i++) {
+            mGate.update(mScene.render(SceneFrames.walkingIn(WALK_FRAMES)));
+        }
+
+        // Straight out of the frame, leaving the room as it was
+        assertTrue(mGate.update(mScene.render(null)));
+    }
+
+    @Test
+    public void resetStartsOver() {
+        settle();
+        mGate.reset();
+        assertTrue(mGate.update(mScene.render(null)));
+        assertFalse(mGate.update(mScene.render(null)));
+    }
+
+    /**
+     * Let the gate learn the empty room
+     */
+    private void settle() {
+        for (int i = 0; i < 10; i++) {
+            mGate.update(mScene.render(null));
+        }
+    }
+
+    private void walkIn() {
+        for (int i = 1; i <= WALK_FRAMES; i++) {
+            mGate.update(mScene.render(SceneFrames.walkingIn(i)));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.morristaedt.mirror.vision;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the pipeline with its motion gate over someone walking up to the mirror and standing still,
+ * with a scripted detector, and checks on which frames the detector gets to run
+ */
+@RunWith(AndroidJUnit4.class)
+public class MotionGatedPipelineTest {
+
+    private static final long GRACE_MILLIS = 3000;
+    private static final int GRACE_FRAMES = (int) (GRACE_MILLIS / SceneFrames.FRAME_MILLIS);
+    private static final int WALK_FRAMES = 15;
+
+    /**
+     * Sees a face whenever told to, and counts how often it was asked
+     */
+    private static class ScriptedDetector implements FaceDetector {
+        boolean mSeesFace;
+        int mRuns;
+
+        @Override
+        public Rect[] detect(Mat grayImage, int minFaceSize) {
+            mRuns++;
+            return mSeesFace ? new Rect[]{new Rect(60, 40, 40, 40)} : new Rect[0];
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    private SceneFrames mScene;
+    private ScriptedDetector mDetector;
+    private VisionPipeline mPipeline;
+    private long mNowMillis;
+
+    @BeforeClass
+    public static void loadOpenCV() throws InterruptedException {
+        OpenCVTestLoader.load();
+    }
+
+    @Before
+    public void setUp() {
+        mScene = new SceneFrames(7);
+        mDetector = new ScriptedDetector();
+    }
+
+    @After
+    public void tearDown() {
+        mPipeline.release();
+        mScene.release();
+    }
+
+    @Test
+    public void emptyStillRoomIsNotDetected() {
+        start(GRACE_MILLIS);
+        for (int i = 0; i < 100; i++) {
+            process(null);
+        }
+        // Only the first frame, which the gate has nothing to compare against
+        assertEquals(1, mDetector.mRuns);
+    }
+
+    @Test
+    public void missedDetectionWhileStandingStillKeepsDetecting() {
+        start(GRACE_MILLIS);
+        walkIn();
+        standStill(100, true);
+
+        // Long after the gate stopped seeing motion the cascade misses once, then finds them again
+        assertEquals(1, standStill(1, false));
+        assertEquals(100, standStill(100, true));
+    }
+
+    @Test
+    public void detectionStopsOnceNoFaceWasSeenForTheGracePeriod() {
+        start(GRACE_MILLIS);
+        walkIn();
+        standStill(100, true);
+
+        // Turned away from the mirror, but didn't move
+        assertEquals(GRACE_FRAMES - 1, standStill(GRACE_FRAMES - 1, false));
+        standStill(2, false);
+        assertEquals(0, standStill(100, false));
+    }
+
+    @Test
+    public void withoutGraceASingleMissStopsDetection() {
+        start(0);
+        walkIn();
+        standStill(100, true);
+
+        assertEquals(1, standStill(1, false));
+        assertEquals(0, standStill(100, true));
+    }
+
+    @Test
+    public void motionWakesDetectionUp() {
+        start(GRACE_MILLIS);
+        for (int i = 0; i < 30; i++) {
+            process(null);
+        }
+        int runs = mDetector.mRuns;
+        walkIn();
+        assertTrue(mDetector.mRuns - runs >= WALK_FRAMES);
+    }
+
+    private void start(long graceMillis) {
+        mPipeline = new VisionPipeline(mDetector, 320, 0.1f);
+        mPipeline.setMotionGate(new MotionGate(0.02, 0.05), graceMillis);
+        mPipeline.start(SceneFrames.WIDTH, SceneFrames.HEIGHT);
+        // Let the gate learn the empty room
+        for (int i = 0; i < 10; i++) {
+            process(null);
+        }
+    }
+
+    private void walkIn() {
+        mDetector.mSeesFace = true;
+        for (int i = 1; i <= WALK_FRAMES; i++) {
+            process(SceneFrames.walkingIn(i));
+        }
+    }
+
+    /**
+     * @return How many of the frames the detector ran on
+     */
+    private int standStill(int frames, boolean seesFace) {
+        mDetector.mSeesFace = seesFace;
+        int runs = mDetector.mRuns;
+        for (int i = 0; i < frames; i++) {
+            process(SceneFrames.walkingIn(WALK_FRAMES));
+        }
+        return mDetector.mRuns - runs;
+    }
+
+    private void process(Rect person) {
+        mPipeline.process(mScene.render(person), mNowMillis);
+        mNowMillis += SceneFrames.FRAME_MILLIS;
+    }
+}
@@ -0,0 +1,64 @@
+package com.morristaedt.mirror.vision;
+
+import android.support.test.InstrumentationRegistry;
+
+import org.opencv.android.InstallCallbackInterface;
+import org.opencv.android.LoaderCallbackInterface;
+import org.opencv.android.OpenCVLoader;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Loads the OpenCV native libraries for tests that need real Mats, the same way the app does:
+ * from the OpenCV Manager, unless the build packages them itself.
+ */
+public class OpenCVTestLoader {
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private static boolean sLoaded;
+
+    private OpenCVTestLoader() {
+    }
+
+    /**
+     * Call before creating any Mat, i.e. from a @BeforeClass method
+     */
+    public static synchronized void load() throws InterruptedException {
+        if (sLoaded) {
+            return;
+        }
+        if (OpenCVLoader.initDebug()) {
+            sLoaded = true;
+            return;
+        }
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final LoaderCallbackInterface callback = new LoaderCallbackInterface() {
+            @Override
+            public void onManagerConnected(int status) {
+                sLoaded = status == LoaderCallbackInterface.SUCCESS;
+                latch.countDown();
+            }
+
+            @Override
+            public void onPackageInstall(int operation, InstallCallbackInterface callback) {
+                // No one to ask for installing the manager
+                callback.cancel();
+                latch.countDown();
+            }
+        };
+        // The manager reports back on the main thread, which mustn't be the one waiting for it
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                OpenCVLoader.initAsync(OpenCVLoader.OPENCV_VERSION_3_1_0, InstrumentationRegistry.getTargetContext(), callback);
+            }
+        });
+        latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue("OpenCV isn't available, install the OpenCV Manager", sLoaded);
+    }
+}
@@ -0,0 +1,65 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * A reproducible stand-in for a recorded camera sequence: a textured room, sensor noise on every
+ * frame, and optionally someone in it. Tests script where the person is frame by frame.
+ */
+public class SceneFrames {
+
+    public static final int WIDTH = 640;
+    public static final int HEIGHT = 480;
+    public static final long FRAME_MILLIS = 33;
+
+    private static final double NOISE_SIGMA = 3;
+    private static final double PERSON_BRIGHTNESS = 230;
+
+    private final Mat mBackground = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+    private final Mat mNoise = new Mat(HEIGHT, WIDTH, CvType.CV_8SC1);
+    private final Mat mFrame = new Mat();
+    private final Mat mNoMask = new Mat();
+
+    public SceneFrames(long seed) {
+        Core.setRNGSeed((int) seed);
+        Core.randu(mBackground, 0, 180);
+        Imgproc.GaussianBlur(mBackground, mBackground, new Size(9, 9), 0);
+    }
+
+    /**
+     * @param person Where the person stands in the frame, or null for an empty room
+     * @return The next frame, valid until the next call
+     */
+    public Mat render(Rect person) {
+        mBackground.copyTo(mFrame);
+        if (person != null) {
+            mFrame.submat(person).setTo(new Scalar(PERSON_BRIGHTNESS));
+        }
+        Core.randn(mNoise, 0, NOISE_SIGMA);
+        Core.add(mFrame, mNoise, mFrame, mNoMask, CvType.CV_8UC1);
+        return mFrame;
+    }
+
+    /**
+     * @return Where someone walking in from the left edge is after the given number of frames,
+     * stopping in the middle of the frame
+     */
+    public static Rect walkingIn(int frame) {
+        int width = WIDTH / 4;
+        int x = Math.min(frame * 16, (WIDTH - width) / 2);
+        return new Rect(x, HEIGHT / 4, width, HEIGHT / 2);
+    }
+
+    public void release() {
+        mBackground.release();
+        mNoise.release();
+        mFrame.release();
+        mNoMask.release();
+    }
+}
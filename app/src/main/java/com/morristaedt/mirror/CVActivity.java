@@ -1,31 +1,32 @@
 package com.morristaedt.mirror;
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.ContactsContract;
 import android.support.v7.app.ActionBarActivity;
 import android.view.Surface;
 import android.view.WindowManager;
 import android.util.Log;
-import android.content.Context;
+
+import com.morristaedt.mirror.configuration.ConfigurationSettings;
+import com.morristaedt.mirror.vision.CascadeFaceDetector;
+import com.morristaedt.mirror.vision.CascadeProvider;
+import com.morristaedt.mirror.vision.VisionPipeline;
 
 import org.opencv.android.*;
-import org.opencv.android.CameraBridgeViewBase.CvCameraViewListener;
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewListener2;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.objdetect.CascadeClassifier;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
+public class CVActivity extends ActionBarActivity implements CvCameraViewListener2 {
 
-public class CVActivity extends ActionBarActivity implements CvCameraViewListener {
+    private ConfigurationSettings mConfigSettings;
 
     private CameraBridgeViewBase mCameraView;
     private CascadeClassifier mClassifier;
-    private Mat mGrayImage;
-    private Mat mRotatedImage;
-    private int mAbsFaceSize;
-    private Size mResizedSize;
+    private VisionPipeline mVisionPipeline;
 
     private BaseLoaderCallback mLoaderCallback = new BaseLoaderCallback(this) {
         @Override
@@ -42,49 +43,27 @@ public class CVActivity extends ActionBarActivity implements CvCameraViewListene
     };
 
     protected void initializeOpenCVDependencies() {
-        try{
-            // Copy the resource into a temp file so OpenCV can load it
-            InputStream is = getResources().openRawResource(R.raw.lbpcascade_frontalface);
-            File cascadeDir = getDir("c", Context.MODE_WORLD_READABLE);
-            File mCascadeFile = new File(cascadeDir, "lbpcascade.xml");
-            FileOutputStream os = new FileOutputStream(mCascadeFile);
-
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                os.write(buffer, 0, bytesRead);
-            }
-            is.close();
-            os.close();
-
-            // Load the cascade classifier
-            mClassifier = new CascadeClassifier(mCascadeFile.getAbsolutePath());
-            mClassifier.load(mCascadeFile.getAbsolutePath());
-
-            if(mClassifier.empty())
-            {
-                Log.v("CVActivity","--(!)Error loading A\n");
-                mClassifier = null;
-                return;
-            }
-            else
-            {
-                Log.v("CVActivity",
-                        "Loaded cascade classifier from " + mCascadeFile.getAbsolutePath());
+        // Copying and parsing the cascade happens off the main thread, and only once per process
+        CascadeProvider.getClassifier(this, R.raw.lbpcascade_frontalface, new CascadeProvider.CascadeListener() {
+            @Override
+            public void onCascadeLoaded(CascadeClassifier classifier) {
+                mClassifier = classifier;
+                if (mClassifier == null) {
+                    return;
+                }
+
+                // And we are ready to go
+                mCameraView.enableView();
             }
-            mResizedSize = new Size(1.0, 1.0);
-        } catch (Exception e) {
-            Log.e("CVActivity", "Error loading cascade", e);
-        }
-
-        // And we are ready to go
-        mCameraView.enableView();
+        });
     }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        mConfigSettings = new ConfigurationSettings(this);
+
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
         // now we create the camera view and assign it to this activity
@@ -102,69 +81,58 @@ public class CVActivity extends ActionBarActivity implements CvCameraViewListene
 
     /*
      *
-     * Implementation of the  CvCameraViewListener interface
+     * Implementation of the  CvCameraViewListener2 interface
      *
       */
 
     @Override
     public void onCameraViewStarted(int width, int height) {
-        mGrayImage = new Mat(height, width, CvType.CV_8UC4);
-        mRotatedImage = new Mat(height, width, CvType.CV_8UC4);
-        // The faces will be a 20% of the height of the screen
-        mAbsFaceSize = (int) (height * 0.2);
+        // Same pipeline as the mirror, but detecting on every frame and reporting preview coordinates
+        mVisionPipeline = new VisionPipeline(new CascadeFaceDetector(mClassifier),
+                mConfigSettings.getDetectionWidth(), mConfigSettings.getFaceFraction());
+        mVisionPipeline.setMapToSource(true);
+        mVisionPipeline.start(width, height);
     }
     @Override
     public void onCameraViewStopped() {
-
+        if (mVisionPipeline != null) {
+            Log.v("CVActivity", "Vision " + mVisionPipeline.getStats(SystemClock.elapsedRealtime()));
+            mVisionPipeline.release();
+            mVisionPipeline = null;
+        }
     }
 
     @Override
-    public Mat onCameraFrame(Mat aInputFrame) {
-        // Create a rotated grayscale image
-        Point center = new Point( aInputFrame.cols()/2, aInputFrame.rows()/2 );
+    public Mat onCameraFrame(CvCameraViewFrame inputFrame) {
+        Mat aInputFrame = inputFrame.rgba();
 
-        double angle = 0.0;
+        int angle = 0;
         switch (getWindowManager().getDefaultDisplay().getRotation()) {
             default:
             case Surface.ROTATION_0:
-                angle = 0.0;
+                angle = 0;
                 break;
             case Surface.ROTATION_90:
-                angle = 270.0;
+                angle = 270;
                 break;
             case Surface.ROTATION_180:
-                angle = 180.0;
+                angle = 180;
                 break;
             case Surface.ROTATION_270:
-                angle = 90.0;
+                angle = 90;
                 break;
         }
-        Mat rotationMatrix = Imgproc.getRotationMatrix2D(center, angle, 1.0);
-
-        Imgproc.warpAffine(aInputFrame, mRotatedImage, rotationMatrix, aInputFrame.size());
-        Imgproc.cvtColor(mRotatedImage, mGrayImage, Imgproc.COLOR_RGBA2RGB);
 
-        MatOfRect faces = new MatOfRect();
-
-        // Use the classifier to detect faces
-        if (mClassifier != null) {
-            mClassifier.detectMultiScale(mGrayImage, faces, 1.1, 2, 2,
-                    new Size(mAbsFaceSize, mAbsFaceSize), new Size());
-        }
+        mVisionPipeline.setRotation(angle);
+        mVisionPipeline.process(inputFrame.gray(), SystemClock.elapsedRealtime());
 
         // If there are any faces found, draw a rectangle around it
-        Rect[] facesArray = faces.toArray();
+        Rect[] facesArray = mVisionPipeline.getFaces();
         for (int i = 0; i <facesArray.length; i++) {
-            // process the face in order to feed it to the recognizer
-            Mat face = mRotatedImage.submat(facesArray[i]);
-            Mat resize_face = new Mat();
-            Imgproc.resize(face, resize_face, mResizedSize, 1.0, 1.0, Imgproc.INTER_CUBIC);
-
-            // print a rectangle around the face
-            Imgproc.rectangle(mRotatedImage, facesArray[i].tl(), facesArray[i].br(), new Scalar(9, 0, 255, 255), 3);
+            Imgproc.rectangle(aInputFrame, facesArray[i].tl(), facesArray[i].br(), new Scalar(9, 0, 255, 255), 3);
         }
 
-        return mRotatedImage;
+        return aInputFrame;
     }
 
 }
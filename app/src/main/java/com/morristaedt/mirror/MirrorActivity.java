@@ -1,11 +1,14 @@
 package com.morristaedt.mirror;
 
-import android.content.Context;
+import android.content.ComponentName;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.graphics.ColorFilter;
 import android.graphics.ColorMatrixColorFilter;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.IBinder;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.ActionBarActivity;
@@ -20,34 +23,47 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.morristaedt.mirror.configuration.ConfigurationSettings;
-import com.morristaedt.mirror.modules.BirthdayModule;
-import com.morristaedt.mirror.modules.CalendarModule;
 import com.morristaedt.mirror.modules.ChoresModule;
 import com.morristaedt.mirror.modules.DayModule;
-import com.morristaedt.mirror.modules.ForecastModule;
 import com.morristaedt.mirror.modules.GesturesModule;
-import com.morristaedt.mirror.modules.NewsModule;
-import com.morristaedt.mirror.modules.XKCDModule;
-import com.morristaedt.mirror.modules.YahooFinanceModule;
 import com.morristaedt.mirror.receiver.AlarmReceiver;
 import com.morristaedt.mirror.requests.YahooStockResponse;
-import com.morristaedt.mirror.utils.WeekUtil;
+import com.morristaedt.mirror.service.MirrorDataService;
+import com.morristaedt.mirror.vision.AllocationCounter;
+import com.morristaedt.mirror.vision.BackendBenchmarkTask;
+import com.morristaedt.mirror.vision.CascadeFaceDetector;
+import com.morristaedt.mirror.vision.CascadeProvider;
+import com.morristaedt.mirror.vision.DetectionScheduler;
+import com.morristaedt.mirror.vision.DutyCycleController;
+import com.morristaedt.mirror.vision.FaceDetector;
+import com.morristaedt.mirror.vision.FaceDetectorBackend;
+import com.morristaedt.mirror.vision.FaceTracker;
+import com.morristaedt.mirror.vision.FramePool;
+import com.morristaedt.mirror.vision.FrameRecorder;
+import com.morristaedt.mirror.vision.FrameStats;
+import com.morristaedt.mirror.vision.Gesture;
+import com.morristaedt.mirror.vision.MeteredFaceDetector;
+import com.morristaedt.mirror.vision.MirrorCameraView;
+import com.morristaedt.mirror.vision.MotionGate;
+import com.morristaedt.mirror.vision.MotionHistoryGestures;
+import com.morristaedt.mirror.vision.ParallelFaceDetector;
+import com.morristaedt.mirror.vision.PlayServicesFaceDetector;
+import com.morristaedt.mirror.vision.PresenceStateMachine;
+import com.morristaedt.mirror.vision.PreviewSizePolicy;
+import com.morristaedt.mirror.vision.RoiFaceDetector;
+import com.morristaedt.mirror.vision.VisionPipeline;
 import com.squareup.picasso.Picasso;
 
 import org.opencv.android.*;
-import org.opencv.android.CameraBridgeViewBase.CvCameraViewListener;
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewListener2;
 import org.opencv.core.*;
-import org.opencv.imgproc.Imgproc;
 import org.opencv.objdetect.CascadeClassifier;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Locale;
 
-public class MirrorActivity extends ActionBarActivity  implements CvCameraViewListener {
+public class MirrorActivity extends ActionBarActivity  implements CvCameraViewListener2 {
 
     @NonNull
     private ConfigurationSettings mConfigSettings;
@@ -62,6 +78,7 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
     private TextView mBikeTodayText;
     private TextView mStockText;
     private TextView mGesturesText;
+    private TextView mFrameStatsText;
     private View mWaterPlants;
     private View mGroceryList;
     private ImageView mXKCDImage;
@@ -71,21 +88,43 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
 
     private boolean mVisible = false; // By default we don't show anything
 
-    private CameraBridgeViewBase mCameraView;
+    private MirrorCameraView mCameraView;
+    private PreviewSizePolicy mPreviewSizePolicy;
     private CascadeClassifier mClassifier;
-    private Mat mGrayImage;
-    private Mat mRotatedImage;
-    private double mAngle;
-    private int mAbsFaceSize;
-    private Size mResizedSize;
-
-    private static ScheduledExecutorService mExecutor;
+    private FaceDetectorBackend mCascadeBackend;
+    private int mCascadeResId;
+    private int mAngle;
+    private VisionPipeline mVisionPipeline;
+    private AllocationCounter mAllocationCounter;
+    private FrameRecorder mFrameRecorder;
+    private FrameStats mFrameStats;
+    private boolean mShowFrameStats;
+    private long mFrameStatsShownMillis;
+
+    private static final int DEBUG_STATS_FRAMES = 300;
+    private static final long FRAME_STATS_INTERVAL_MILLIS = 1000;
+    private static final int RECORD_EVERY_NTH_FRAME = 3;
+    private static final int RECORD_MAX_FRAMES = 600;
+    private static final String RECORDINGS_DIRECTORY = "frames";
+
+    private MirrorDataService mDataService;
+    private long mBindStartMillis;
 
     /*
     Init the various listeners needed
      */
 
-    private XKCDModule.XKCDListener mXKCDListener = new XKCDModule.XKCDListener() {
+    private MirrorDataService.DataListener mDataListener = new MirrorDataService.DataListener() {
+        @Override
+        public void onBirthday(String birthday) {
+            if (!TextUtils.isEmpty(birthday)) {
+                mBirthdayText.setText(getString(R.string.happy_birthday, birthday));
+            } else {
+                mBirthdayText.setText("");
+            }
+            setViewState();
+        }
+
         @Override
         public void onNewXKCDToday(String url) {
             if (TextUtils.isEmpty(url)) {
@@ -95,9 +134,7 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
                 mXKCDImage.setVisibility(View.VISIBLE);
             }
         }
-    };
 
-    private YahooFinanceModule.StockListener mStockListener = new YahooFinanceModule.StockListener() {
         @Override
         public void onNewStockPrice(YahooStockResponse.YahooQuoteResponse quoteResponse) {
             if (quoteResponse == null) {
@@ -105,14 +142,14 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
             } else {
                 mStockText.setText("$" + quoteResponse.symbol + " $" + quoteResponse.LastTradePriceOnly);
             }
+            setViewState();
         }
-    };
 
-    private ForecastModule.ForecastListener mForecastListener = new ForecastModule.ForecastListener() {
         @Override
         public void onWeatherToday(String weatherToday) {
             if (!TextUtils.isEmpty(weatherToday)) {
                 mWeatherSummary.setText(weatherToday);
+                setViewState();
             }
         }
 
@@ -120,22 +157,47 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
         public void onShouldBike(boolean showToday, boolean shouldBike) {
             if (mConfigSettings.showBikingHint()) {
                 mBikeTodayText.setText(shouldBike ? R.string.bike_today : R.string.no_bike_today);
+                setViewState();
             }
         }
-    };
 
-    private NewsModule.NewsListener mNewsListener = new NewsModule.NewsListener() {
         @Override
         public void onNewNews(String headline) {
             mNewsHeadline.setText(headline);
+            setViewState();
+        }
+
+        @Override
+        public void onCalendarUpdate(String title, String details) {
+            mCalendarTitleText.setText(title);
+            mCalendarDetailsText.setText(details);
+            setViewState();
+        }
+    };
+
+    private ServiceConnection mDataConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            Log.v("MirrorActivity", "Data service bound in " + (SystemClock.elapsedRealtime() - mBindStartMillis) + "ms");
+            mDataService = ((MirrorDataService.LocalBinder) service).getService();
+            mDataService.setDataListener(mDataListener);
+            if (ConfigurationSettings.isDebugBuild()) {
+                Log.d("MirrorActivity", "Data service " + mDataService);
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mDataService = null;
         }
     };
 
-    private GesturesModule mGesturesModule = new GesturesModule();
+    private GesturesModule mGesturesModule;
 
     private GesturesModule.GesturesListener mGesturesListener = new GesturesModule.GesturesListener() {
         @Override
         public void onFaceDetected(final boolean faceDetected) {
+            // Only called on presence transitions, so this is cheap to post
             runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
@@ -146,13 +208,39 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
                 }
             });
         }
+
+        @Override
+        public void onGesture(final Gesture gesture) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    switch (gesture) {
+                        case SWIPE_LEFT:
+                            mGesturesText.setText("<");
+                            break;
+                        case SWIPE_RIGHT:
+                            mGesturesText.setText(">");
+                            break;
+                        case WAVE:
+                            mGesturesText.setText("Hi there!");
+                            break;
+                    }
+                    setViewState();
+                }
+            });
+        }
     };
 
-    private CalendarModule.CalendarListener mCalendarListener = new CalendarModule.CalendarListener() {
+    private DutyCycleController.DutyCycleListener mDutyCycleListener = new DutyCycleController.DutyCycleListener() {
         @Override
-        public void onCalendarUpdate(String title, String details) {
-            mCalendarTitleText.setText(title);
-            mCalendarDetailsText.setText(details);
+        public void onDutyCycleChanged(final DutyCycleController.State state) {
+            Log.v("MirrorActivity", "Camera duty cycle " + state);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    mCameraView.setLowFrameRate(state == DutyCycleController.State.IDLE);
+                }
+            });
         }
     };
 
@@ -165,6 +253,8 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
         super.onCreate(savedInstanceState);
 
         mConfigSettings = new ConfigurationSettings(this);
+        mGesturesModule = new GesturesModule(new PresenceStateMachine(mConfigSettings.getPresenceEnterMillis(),
+                mConfigSettings.getPresenceExitMillis(), mConfigSettings.getPresenceConfidence()));
 
         setContentView(R.layout.activity_mirror);
         AlarmReceiver.startMirrorUpdates(this);
@@ -193,16 +283,16 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
                 switch (orientation) {
                     default:
                     case Surface.ROTATION_0:
-                        mAngle = 0.0;
+                        mAngle = 0;
                         break;
                     case Surface.ROTATION_90:
-                        mAngle = 270.0;
+                        mAngle = 270;
                         break;
                     case Surface.ROTATION_180:
-                        mAngle = 180.0;
+                        mAngle = 180;
                         break;
                     case Surface.ROTATION_270:
-                        mAngle = 90.0;
+                        mAngle = 90;
                         break;
                 }
             }
@@ -212,15 +302,6 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
             mOrientationListener.enable();
         }
 
-        mExecutor = Executors.newScheduledThreadPool(1);
-        mExecutor.scheduleAtFixedRate(new Runnable() {
-            public void run() {
-                Log.v("MirrorActivity",
-                        "Updating data as scheduled");
-                updateMirrorData();
-            }
-        }, 0, 1, TimeUnit.HOURS);
-
         mBirthdayText = (TextView) findViewById(R.id.birthday_text);
         mDayText = (TextView) findViewById(R.id.day_text);
         mDayTimeText = (TextView) findViewById(R.id.daytime_text);
@@ -231,14 +312,21 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
         mBikeTodayText = (TextView) findViewById(R.id.can_bike);
         mStockText = (TextView) findViewById(R.id.stock_text);
         mGesturesText = (TextView) findViewById(R.id.gestures_text);
+        mFrameStatsText = (TextView) findViewById(R.id.frame_stats_text);
         mXKCDImage = (ImageView) findViewById(R.id.xkcd_image);
         mNewsHeadline = (TextView) findViewById(R.id.news_headline);
         mCalendarTitleText = (TextView) findViewById(R.id.calendar_title);
         mCalendarDetailsText = (TextView) findViewById(R.id.calendar_details);
-        mCameraView = (CameraBridgeViewBase) findViewById(R.id.mirror_surface_view);
+        mPreviewSizePolicy = new PreviewSizePolicy(mConfigSettings.getMinFacePixels(), mConfigSettings.getFaceFraction());
+        mCameraView = (MirrorCameraView) findViewById(R.id.mirror_surface_view);
         mCameraView.setCvCameraViewListener(this);
         mCameraView.setCameraIndex(CameraBridgeViewBase.CAMERA_ID_FRONT);
+        mCameraView.setPreviewSizePolicy(mPreviewSizePolicy);
+        // The preview is behind the mirror glass, drawing it is only useful when debugging
+        mCameraView.setHeadless(!ConfigurationSettings.isDebugBuild() || !mConfigSettings.isShowingCameraPreview());
         mGesturesText.setText("I see you!");
+        mShowFrameStats = ConfigurationSettings.isDebugBuild() && mConfigSettings.isShowingFrameStats();
+        mFrameStatsText.setVisibility(mShowFrameStats ? View.VISIBLE : View.GONE);
 
         //Make marquee effect work for long text
         mCalendarTitleText.setSelected(true);
@@ -262,6 +350,27 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
         setViewState();
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+
+        // The service keeps the data fresh, this only shows it
+        MirrorDataService.start(this);
+        mBindStartMillis = SystemClock.elapsedRealtime();
+        bindService(new Intent(this, MirrorDataService.class), mDataConnection, BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        if (mDataService != null) {
+            mDataService.setDataListener(null);
+            mDataService = null;
+        }
+        unbindService(mDataConnection);
+    }
+
     @Override
     protected void onPause() {
         super.onPause();
@@ -289,6 +398,7 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
     public void onBackPressed() {
         super.onBackPressed();
         AlarmReceiver.stopMirrorUpdates(this);
+        MirrorDataService.stop(this);
         Intent intent = new Intent(this, SetUpActivity.class);
         startActivity(intent);
     }
@@ -297,42 +407,6 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
     Inner functions to display the data
      */
 
-    private void updateMirrorData() {
-
-        String birthday = BirthdayModule.getBirthday();
-        if (!TextUtils.isEmpty(birthday)) {
-            mBirthdayText.setText(getString(R.string.happy_birthday, birthday));
-        } else {
-            mBirthdayText.setText("");
-        }
-
-        if (mConfigSettings.showNewsHeadline()) {
-            NewsModule.getNewsHeadline(mNewsListener);
-        }
-
-        if (mConfigSettings.showXKCD()) {
-            XKCDModule.getXKCDForToday(mXKCDListener);
-        }
-
-        if (mConfigSettings.showNextCalendarEvent()) {
-            CalendarModule.getCalendarEvents(this, mCalendarListener);
-        }
-
-        if (mConfigSettings.showStock() && (ConfigurationSettings.isDemoMode() || WeekUtil.isWeekdayAfterFive())) {
-            YahooFinanceModule.getStockForToday(mConfigSettings.getStockTickerSymbol(), mStockListener);
-        }
-
-        // Get the API key for whichever weather service API key is available
-        // These should be declared as a string in xml
-        int forecastApiKeyRes = getResources().getIdentifier("dark_sky_api_key", "string", getPackageName());
-        int openWeatherApiKeyRes = getResources().getIdentifier("open_weather_api_key", "string", getPackageName());
-
-        if (forecastApiKeyRes != 0) {
-            ForecastModule.getForecastIOHourlyForecast(getString(forecastApiKeyRes), mConfigSettings.getForecastUnits(), mConfigSettings.getLatitude(), mConfigSettings.getLongitude(), mForecastListener);
-        } else if (openWeatherApiKeyRes != 0) {
-            ForecastModule.getOpenWeatherForecast(getString(openWeatherApiKeyRes), mConfigSettings.getForecastUnits(), mConfigSettings.getLatitude(), mConfigSettings.getLongitude(), mForecastListener);
-        }
-    }
     private void setViewState() {
 
         mDayText.setText(DayModule.getDay());
@@ -378,78 +452,202 @@ public class MirrorActivity extends ActionBarActivity  implements CvCameraViewLi
     };
 
     protected void initOpenCV() {
-        try{
-            // Copy the resource into a temp file so OpenCV can load it
-            InputStream is = getResources().openRawResource(R.raw.lbpcascade_frontalface);
-            File cascadeDir = getDir("c", Context.MODE_PRIVATE);
-            File mCascadeFile = new File(cascadeDir, "lbpcascade.xml");
-            FileOutputStream os = new FileOutputStream(mCascadeFile);
-
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                os.write(buffer, 0, bytesRead);
-            }
-            is.close();
-            os.close();
-
-            // Load the cascade classifier
-            mClassifier = new CascadeClassifier(mCascadeFile.getAbsolutePath());
-            mClassifier.load(mCascadeFile.getAbsolutePath());
-
-            if(mClassifier.empty())
-            {
-                Log.v("CVActivity","Error loading classifier. It seems empty.");
-                mClassifier = null;
-                return;
-            }
-            else
-            {
-                Log.v("CVActivity", "Loaded cascade classifier from " + mCascadeFile.getAbsolutePath());
-            }
-            mResizedSize = new Size(1.0, 1.0);
-        } catch (Exception e) {
-            Log.e("CVActivity", "Error loading cascade", e);
+        // The cascade is also the fallback when the Play Services detector isn't available
+        mCascadeBackend = mConfigSettings.getFaceDetectorBackend() == FaceDetectorBackend.HAAR
+                ? FaceDetectorBackend.HAAR : FaceDetectorBackend.LBP;
+        mCascadeResId = CascadeProvider.findCascade(this, mCascadeBackend.getCascadeName());
+        if (mCascadeResId == 0) {
+            Log.w("MirrorActivity", "No " + mCascadeBackend.getCascadeName() + " in this build, using the LBP cascade");
+            mCascadeBackend = FaceDetectorBackend.LBP;
+            mCascadeResId = R.raw.lbpcascade_frontalface;
         }
 
-        // And we are ready to go
-        mCameraView.enableView();
+        // Copying and parsing the cascade happens off the main thread, and only once per process
+        CascadeProvider.getClassifier(this, mCascadeResId, new CascadeProvider.CascadeListener() {
+            @Override
+            public void onCascadeLoaded(CascadeClassifier classifier) {
+                mClassifier = classifier;
+                if (mClassifier == null) {
+                    return;
+                }
+
+                if (ConfigurationSettings.isDebugBuild() && mConfigSettings.isBenchmarkingBackends()) {
+                    benchmarkBackends();
+                }
+
+                // And we are ready to go
+                mCameraView.enableView();
+            }
+        });
     }
 
     @Override
     public void onCameraViewStarted(int width, int height) {
-        mGrayImage = new Mat(height, width, CvType.CV_8UC4);
-        mRotatedImage = new Mat(height, width, CvType.CV_8UC4);
+        mVisionPipeline = new VisionPipeline(newFaceDetector(),
+                mConfigSettings.getDetectionWidth(), mConfigSettings.getFaceFraction());
+        mVisionPipeline.setAsync(true);
+        mVisionPipeline.setScheduler(new DetectionScheduler());
+        // Keeps detecting for as long as presence takes to drop, so nobody is blanked out for standing still
+        mVisionPipeline.setMotionGate(new MotionGate(mConfigSettings.getMotionThreshold(), mConfigSettings.getMotionLearningRate()),
+                mConfigSettings.getPresenceExitMillis());
+        // Follows the face between cascade runs, so gestures get a position on every frame
+        mVisionPipeline.setTracker(new FaceTracker());
+        mVisionPipeline.setGestures(new MotionHistoryGestures());
+        DutyCycleController dutyCycle = new DutyCycleController(mConfigSettings.getIdleAfterMillis(), mConfigSettings.getIdleSampleMillis());
+        dutyCycle.setDutyCycleListener(mDutyCycleListener);
+        mVisionPipeline.setDutyCycle(dutyCycle);
+        mFrameStats = new FrameStats();
+        mVisionPipeline.setStageTimingListener(mFrameStats);
+        mVisionPipeline.start(width, height);
+
+        mAllocationCounter = new AllocationCounter(ConfigurationSettings.isDebugBuild());
+        if (ConfigurationSettings.isDebugBuild() && mConfigSettings.isRecordingFrames()) {
+            // Replay these at a third of the camera's frame rate
+            File directory = new File(getExternalFilesDir(null), RECORDINGS_DIRECTORY + "/" + System.currentTimeMillis());
+            mFrameRecorder = new FrameRecorder(directory, RECORD_EVERY_NTH_FRAME, RECORD_MAX_FRAMES);
+        }
+    }
+
+    private void benchmarkBackends() {
+        File recording = BackendBenchmarkTask.findLatestRecording(new File(getExternalFilesDir(null), RECORDINGS_DIRECTORY));
+        if (recording == null) {
+            Log.w("MirrorActivity", "No recorded frames to benchmark face detectors on");
+            return;
+        }
+        new BackendBenchmarkTask(this, recording, mConfigSettings.getDetectionWidth(),
+                mConfigSettings.getFaceFraction(), mAngle).execute();
+    }
+
+    /**
+     * @return The configured face detector backend, timed so its cost shows in the stats
+     */
+    private FaceDetector newFaceDetector() {
+        if (mConfigSettings.getFaceDetectorBackend() == FaceDetectorBackend.PLAY_SERVICES) {
+            PlayServicesFaceDetector detector = new PlayServicesFaceDetector(this);
+            if (detector.isOperational()) {
+                return new MeteredFaceDetector("play services", detector);
+            }
+            Log.w("MirrorActivity", "Play Services face detector not available yet, using the cascade");
+            detector.release();
+        }
+
+        return new MeteredFaceDetector(mCascadeBackend.name().toLowerCase(Locale.US), new RoiFaceDetector(newCascadeDetector()));
+    }
+
+    private FaceDetector newCascadeDetector() {
+        int threads = mConfigSettings.getDetectionThreads();
+        if (threads <= 1) {
+            return new CascadeFaceDetector(mClassifier);
+        }
 
-        mAbsFaceSize = (int) (height * 0.1);
+        final CascadeClassifier sharedClassifier = mClassifier;
+        final int cascadeResId = mCascadeResId;
+        return new ParallelFaceDetector(new ParallelFaceDetector.DetectorFactory() {
+            private boolean mSharedClassifierUsed;
+
+            @Override
+            public CascadeFaceDetector newDetector() {
+                // The first band can use the shared classifier, the others need their own
+                CascadeClassifier classifier = mSharedClassifierUsed
+                        ? CascadeProvider.obtainClassifier(MirrorActivity.this, cascadeResId) : sharedClassifier;
+                mSharedClassifierUsed = true;
+                return classifier != null ? new CascadeFaceDetector(classifier) : null;
+            }
+
+            @Override
+            public void recycleDetector(CascadeFaceDetector detector) {
+                // Kept for the next time the camera starts, instead of parsing the cascade again
+                if (detector.getClassifier() != sharedClassifier) {
+                    CascadeProvider.recycleClassifier(cascadeResId, detector.getClassifier());
+                }
+            }
+        }, threads);
     }
 
     @Override
     public void onCameraViewStopped() {
-
+        if (mVisionPipeline != null) {
+            Log.v("MirrorActivity", "Vision " + mVisionPipeline.getStats(SystemClock.elapsedRealtime()));
+            mVisionPipeline.release();
+            mVisionPipeline = null;
+        }
+        if (mAllocationCounter != null) {
+            Log.v("MirrorActivity", "Frame path " + mAllocationCounter);
+            mAllocationCounter.stop();
+        }
+        if (mFrameRecorder != null) {
+            mFrameRecorder.close();
+            Log.v("MirrorActivity", "Frame recorder " + mFrameRecorder);
+            mFrameRecorder = null;
+        }
+        Log.v("MirrorActivity", "Live native Mats after release: " + FramePool.getLiveMats());
     }
 
     @Override
-    public Mat onCameraFrame(Mat aInputFrame) {
-        // Create a rotated grayscale image
-        Point center = new Point( aInputFrame.cols()/2, aInputFrame.rows()/2 );
-        Mat rotationMatrix = Imgproc.getRotationMatrix2D(center, mAngle, 1.0);
-        Imgproc.warpAffine(aInputFrame, mRotatedImage, rotationMatrix, aInputFrame.size());
-        Imgproc.cvtColor(mRotatedImage, mGrayImage, Imgproc.COLOR_RGBA2RGB);
+    public Mat onCameraFrame(CvCameraViewFrame inputFrame) {
+        long frameStart = System.nanoTime();
+        mAllocationCounter.beginFrame();
+
+        // The luminance plane of the camera frame is already grayscale, no color conversion needed.
+        // Every gray() call makes a new Mat header, so take it once for the recorder and the pipeline.
+        Mat gray = inputFrame.gray();
+        if (mFrameRecorder != null) {
+            mFrameRecorder.record(gray);
+        }
 
-        MatOfRect faces = new MatOfRect();
+        long now = SystemClock.elapsedRealtime();
+        mVisionPipeline.setRotation(mAngle);
+        if (!mVisionPipeline.process(gray, now)) {
+            // Idle and between samples, null leaves the last preview image in place
+            mFrameStats.recordFrame(System.nanoTime(), 0, false);
+            mAllocationCounter.endFrame();
+            return null;
+        }
 
-        // Use the classifier to detect faces
-        if (mClassifier != null) {
-            mClassifier.detectMultiScale(mGrayImage, faces, 1.1, 2, 2,
-                    new Size(mAbsFaceSize, mAbsFaceSize), new Size());
+        // Pass the detected faces (if any), to the module for processing.
+        // On frames that weren't detected these are the faces from the last detection.
+        long listenerStart = System.nanoTime();
+        mGesturesModule.receiveFrames(mVisionPipeline.getFaces());
+        Gesture gesture = mVisionPipeline.pollGesture();
+        if (gesture != null) {
+            mGesturesModule.receiveGesture(gesture);
+        }
+        mFrameStats.recordListener(System.nanoTime() - listenerStart);
+
+        // Headless the returned image is never drawn, so don't convert it.
+        // The preview is hidden behind the mirror, so it isn't worth rotating either.
+        Mat rgba = null;
+        if (!mCameraView.isHeadless()) {
+            long convertStart = System.nanoTime();
+            rgba = inputFrame.rgba();
+            mFrameStats.recordConvert(System.nanoTime() - convertStart);
         }
+        long frameEnd = System.nanoTime();
+        mFrameStats.recordFrame(frameEnd, frameEnd - frameStart, true);
 
-        Rect[] facesArray = faces.toArray();
+        mAllocationCounter.endFrame();
+        if (mShowFrameStats && now - mFrameStatsShownMillis >= FRAME_STATS_INTERVAL_MILLIS) {
+            mFrameStatsShownMillis = now;
+            showFrameStats(mFrameStats.toString());
+        }
+        if (ConfigurationSettings.isDebugBuild() && mVisionPipeline.getFrameTimer().getFrames() % DEBUG_STATS_FRAMES == 0) {
+            Log.d("MirrorActivity", "Vision " + mVisionPipeline.getStats(now)
+                    + ", live native Mats: " + FramePool.getLiveMats()
+                    + ", Java allocations last frame: " + mAllocationCounter.getLastFrameAllocations()
+                    + ", " + mAllocationCounter);
+            Log.d("MirrorActivity", "Frame stats " + mFrameStats.toString().replace('\n', ';'));
+            mFrameStats.reset();
+        }
 
-        // Pass the detected faces (if any), to the module for processing
-        mGesturesModule.receiveFrames(facesArray);
+        return rgba;
+    }
 
-        return mRotatedImage;
+    private void showFrameStats(final String stats) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mFrameStatsText.setText(stats);
+            }
+        });
     }
 }
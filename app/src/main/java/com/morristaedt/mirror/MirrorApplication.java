@@ -4,6 +4,9 @@ import android.app.Application;
 
 import com.crashlytics.android.Crashlytics;
 import com.morristaedt.mirror.configuration.ConfigurationSettings;
+import com.morristaedt.mirror.network.SharedHttpClient;
+import com.squareup.picasso.OkHttpDownloader;
+import com.squareup.picasso.Picasso;
 
 import io.fabric.sdk.android.Fabric;
 
@@ -18,5 +21,12 @@ public class MirrorApplication extends Application {
         if (!ConfigurationSettings.isDebugBuild()) {
             Fabric.with(this, new Crashlytics());
         }
+
+        SharedHttpClient.init(this);
+
+        // Images share connections with the api requests
+        Picasso.setSingletonInstance(new Picasso.Builder(this)
+                .downloader(new OkHttpDownloader(SharedHttpClient.get()))
+                .build());
     }
 }
@@ -19,6 +19,7 @@ import android.widget.RadioGroup;
 import android.widget.Toast;
 
 import com.morristaedt.mirror.configuration.ConfigurationSettings;
+import com.morristaedt.mirror.vision.FaceDetectorBackend;
 
 public class SetUpActivity extends Activity {
 
@@ -46,6 +47,12 @@ public class SetUpActivity extends Activity {
     private EditText mLatitude;
     private EditText mLongitude;
     private EditText mStockTickerSymbol;
+    private RadioGroup mFaceDetectorChoice;
+    private EditText mDetectionThreads;
+    private CheckBox mCameraPreviewCheckbox;
+    private CheckBox mFrameStatsCheckbox;
+    private CheckBox mRecordFramesCheckbox;
+    private CheckBox mBenchmarkBackendsCheckbox;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -84,6 +91,10 @@ public class SetUpActivity extends Activity {
         mStockTickerSymbol = (EditText) findViewById(R.id.stock_name);
         mStockTickerSymbol.setText(mConfigSettings.getStockTickerSymbol());
 
+        if (ConfigurationSettings.isDebugBuild()) {
+            setUpDebugFields();
+        }
+
         findViewById(R.id.launch_button).setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -165,6 +176,67 @@ public class SetUpActivity extends Activity {
         }
     }
 
+    private void setUpDebugFields() {
+        findViewById(R.id.debug_view).setVisibility(View.VISIBLE);
+
+        mFaceDetectorChoice = (RadioGroup) findViewById(R.id.face_detector_group);
+        switch (mConfigSettings.getFaceDetectorBackend()) {
+            case HAAR:
+                mFaceDetectorChoice.check(R.id.face_detector_haar);
+                break;
+            case PLAY_SERVICES:
+                mFaceDetectorChoice.check(R.id.face_detector_play_services);
+                break;
+            default:
+                mFaceDetectorChoice.check(R.id.face_detector_lbp);
+                break;
+        }
+
+        mDetectionThreads = (EditText) findViewById(R.id.detection_threads);
+        if (mConfigSettings.getConfiguredDetectionThreads() > 0) {
+            mDetectionThreads.setText(String.valueOf(mConfigSettings.getConfiguredDetectionThreads()));
+        }
+
+        mCameraPreviewCheckbox = (CheckBox) findViewById(R.id.camera_preview_checkbox);
+        mCameraPreviewCheckbox.setChecked(mConfigSettings.isShowingCameraPreview());
+
+        mFrameStatsCheckbox = (CheckBox) findViewById(R.id.frame_stats_checkbox);
+        mFrameStatsCheckbox.setChecked(mConfigSettings.isShowingFrameStats());
+
+        mRecordFramesCheckbox = (CheckBox) findViewById(R.id.record_frames_checkbox);
+        mRecordFramesCheckbox.setChecked(mConfigSettings.isRecordingFrames());
+
+        mBenchmarkBackendsCheckbox = (CheckBox) findViewById(R.id.benchmark_backends_checkbox);
+        mBenchmarkBackendsCheckbox.setChecked(mConfigSettings.isBenchmarkingBackends());
+    }
+
+    private void saveDebugFields() {
+        switch (mFaceDetectorChoice.getCheckedRadioButtonId()) {
+            case R.id.face_detector_haar:
+                mConfigSettings.setFaceDetectorBackend(FaceDetectorBackend.HAAR);
+                break;
+            case R.id.face_detector_play_services:
+                mConfigSettings.setFaceDetectorBackend(FaceDetectorBackend.PLAY_SERVICES);
+                break;
+            default:
+                mConfigSettings.setFaceDetectorBackend(FaceDetectorBackend.LBP);
+                break;
+        }
+
+        int threads = 0;
+        try {
+            threads = Integer.parseInt(mDetectionThreads.getText().toString());
+        } catch (NumberFormatException e) {
+            // Blank picks from the number of cores
+        }
+        mConfigSettings.setDetectionThreads(Math.max(0, threads));
+
+        mConfigSettings.setShowCameraPreview(mCameraPreviewCheckbox.isChecked());
+        mConfigSettings.setShowFrameStats(mFrameStatsCheckbox.isChecked());
+        mConfigSettings.setRecordFrames(mRecordFramesCheckbox.isChecked());
+        mConfigSettings.setBenchmarkBackends(mBenchmarkBackendsCheckbox.isChecked());
+    }
+
     private void saveFields() {
         mConfigSettings.setIsCelsius(mTemperatureChoice.getCheckedRadioButtonId() == R.id.celsius);
         mConfigSettings.setShowBikingHint(mBikingCheckbox.isChecked());
@@ -179,5 +251,9 @@ public class SetUpActivity extends Activity {
         }
 
         mConfigSettings.setStockTickerSymbol(mStockTickerSymbol.getText().toString());
+
+        if (ConfigurationSettings.isDebugBuild()) {
+            saveDebugFields();
+        }
     }
 }
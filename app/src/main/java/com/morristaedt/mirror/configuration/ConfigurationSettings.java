@@ -7,6 +7,7 @@ import android.text.TextUtils;
 
 import com.morristaedt.mirror.BuildConfig;
 import com.morristaedt.mirror.requests.ForecastRequest;
+import com.morristaedt.mirror.vision.FaceDetectorBackend;
 
 /**
  * Created by HannahMitt on 9/26/15.
@@ -30,6 +31,41 @@ public class ConfigurationSettings {
     private static final String LAT = "lat";
     private static final String LON = "lon";
     private static final String STOCK_TICKER = "stock_ticker";
+    private static final String DETECTION_WIDTH = "detection_width";
+    private static final String MOTION_THRESHOLD = "motion_threshold";
+    private static final String MOTION_LEARNING_RATE = "motion_learning_rate";
+    private static final String PRESENCE_ENTER_MILLIS = "presence_enter_millis";
+    private static final String PRESENCE_EXIT_MILLIS = "presence_exit_millis";
+    private static final String PRESENCE_CONFIDENCE = "presence_confidence";
+    private static final String MIN_FACE_PIXELS = "min_face_pixels";
+    private static final String FACE_FRACTION = "face_fraction";
+    private static final String IDLE_AFTER_MILLIS = "idle_after_millis";
+    private static final String IDLE_SAMPLE_MILLIS = "idle_sample_millis";
+    private static final String RECORD_FRAMES = "record_frames";
+    private static final String DETECTION_THREADS = "detection_threads";
+    private static final String FACE_DETECTOR = "face_detector";
+    private static final String BENCHMARK_BACKENDS = "benchmark_backends";
+    private static final String SHOW_FRAME_STATS = "show_frame_stats";
+    private static final String SHOW_CAMERA_PREVIEW = "show_camera_preview";
+    private static final String FORECAST_MAX_STALE = "forecast_freshness";
+    private static final String XKCD_MAX_STALE = "xkcd_freshness";
+    private static final String STOCK_MAX_STALE = "stock_freshness";
+    private static final String NEWS_MAX_STALE = "news_freshness";
+
+    private static final int DEFAULT_DETECTION_WIDTH = 320;
+    private static final float DEFAULT_MOTION_THRESHOLD = 0.02f;
+    private static final float DEFAULT_MOTION_LEARNING_RATE = 0.05f;
+    private static final long DEFAULT_PRESENCE_ENTER_MILLIS = 300;
+    private static final long DEFAULT_PRESENCE_EXIT_MILLIS = 3000;
+    private static final float DEFAULT_PRESENCE_CONFIDENCE = 0.6f;
+    private static final int DEFAULT_MIN_FACE_PIXELS = 24;
+    private static final float DEFAULT_FACE_FRACTION = 0.1f;
+    private static final long DEFAULT_IDLE_AFTER_MILLIS = 60 * 1000;
+    private static final long DEFAULT_IDLE_SAMPLE_MILLIS = 1000;
+    private static final int DEFAULT_FORECAST_MAX_STALE_MINUTES = 30;
+    private static final int DEFAULT_XKCD_MAX_STALE_MINUTES = 60;
+    private static final int DEFAULT_STOCK_MAX_STALE_MINUTES = 5;
+    private static final int DEFAULT_NEWS_MAX_STALE_MINUTES = 15;
 
     @NonNull
     private SharedPreferences mSharedPrefs;
@@ -47,6 +83,27 @@ public class ConfigurationSettings {
 
     private String mStockTickerSymbol;
 
+    private int mDetectionWidth;
+    private float mMotionThreshold;
+    private float mMotionLearningRate;
+    private long mPresenceEnterMillis;
+    private long mPresenceExitMillis;
+    private float mPresenceConfidence;
+    private int mMinFacePixels;
+    private float mFaceFraction;
+    private long mIdleAfterMillis;
+    private long mIdleSampleMillis;
+    private boolean mRecordFrames;
+    private int mDetectionThreads;
+    private FaceDetectorBackend mFaceDetectorBackend;
+    private boolean mBenchmarkBackends;
+    private boolean mShowFrameStats;
+    private boolean mShowCameraPreview;
+    private int mForecastMaxStaleMinutes;
+    private int mXKCDMaxStaleMinutes;
+    private int mStockMaxStaleMinutes;
+    private int mNewsMaxStaleMinutes;
+
     public ConfigurationSettings(Context context) {
         mSharedPrefs = context.getSharedPreferences(PREFS_MIRROR, Context.MODE_PRIVATE);
         readPrefs();
@@ -64,6 +121,27 @@ public class ConfigurationSettings {
         mLongitude = mSharedPrefs.getString(LON, "-3.87");
 
         mStockTickerSymbol = mSharedPrefs.getString(STOCK_TICKER, "");
+
+        mDetectionWidth = mSharedPrefs.getInt(DETECTION_WIDTH, DEFAULT_DETECTION_WIDTH);
+        mMotionThreshold = mSharedPrefs.getFloat(MOTION_THRESHOLD, DEFAULT_MOTION_THRESHOLD);
+        mMotionLearningRate = mSharedPrefs.getFloat(MOTION_LEARNING_RATE, DEFAULT_MOTION_LEARNING_RATE);
+        mPresenceEnterMillis = mSharedPrefs.getLong(PRESENCE_ENTER_MILLIS, DEFAULT_PRESENCE_ENTER_MILLIS);
+        mPresenceExitMillis = mSharedPrefs.getLong(PRESENCE_EXIT_MILLIS, DEFAULT_PRESENCE_EXIT_MILLIS);
+        mPresenceConfidence = mSharedPrefs.getFloat(PRESENCE_CONFIDENCE, DEFAULT_PRESENCE_CONFIDENCE);
+        mMinFacePixels = mSharedPrefs.getInt(MIN_FACE_PIXELS, DEFAULT_MIN_FACE_PIXELS);
+        mFaceFraction = mSharedPrefs.getFloat(FACE_FRACTION, DEFAULT_FACE_FRACTION);
+        mIdleAfterMillis = mSharedPrefs.getLong(IDLE_AFTER_MILLIS, DEFAULT_IDLE_AFTER_MILLIS);
+        mIdleSampleMillis = mSharedPrefs.getLong(IDLE_SAMPLE_MILLIS, DEFAULT_IDLE_SAMPLE_MILLIS);
+        mRecordFrames = mSharedPrefs.getBoolean(RECORD_FRAMES, false);
+        mDetectionThreads = mSharedPrefs.getInt(DETECTION_THREADS, 0);
+        mFaceDetectorBackend = FaceDetectorBackend.fromName(mSharedPrefs.getString(FACE_DETECTOR, FaceDetectorBackend.LBP.name()));
+        mBenchmarkBackends = mSharedPrefs.getBoolean(BENCHMARK_BACKENDS, false);
+        mShowFrameStats = mSharedPrefs.getBoolean(SHOW_FRAME_STATS, false);
+        mShowCameraPreview = mSharedPrefs.getBoolean(SHOW_CAMERA_PREVIEW, false);
+        mForecastMaxStaleMinutes = mSharedPrefs.getInt(FORECAST_MAX_STALE, DEFAULT_FORECAST_MAX_STALE_MINUTES);
+        mXKCDMaxStaleMinutes = mSharedPrefs.getInt(XKCD_MAX_STALE, DEFAULT_XKCD_MAX_STALE_MINUTES);
+        mStockMaxStaleMinutes = mSharedPrefs.getInt(STOCK_MAX_STALE, DEFAULT_STOCK_MAX_STALE_MINUTES);
+        mNewsMaxStaleMinutes = mSharedPrefs.getInt(NEWS_MAX_STALE, DEFAULT_NEWS_MAX_STALE_MINUTES);
     }
 
     public void setIsCelsius(boolean isCelsius) {
@@ -120,6 +198,51 @@ public class ConfigurationSettings {
         editor.apply();
     }
 
+    /**
+     * @param threads Threads to split face detection across, 0 to pick from the number of cores
+     */
+    public void setDetectionThreads(int threads) {
+        mDetectionThreads = threads;
+        SharedPreferences.Editor editor = mSharedPrefs.edit();
+        editor.putInt(DETECTION_THREADS, threads);
+        editor.apply();
+    }
+
+    public void setFaceDetectorBackend(FaceDetectorBackend backend) {
+        mFaceDetectorBackend = backend;
+        SharedPreferences.Editor editor = mSharedPrefs.edit();
+        editor.putString(FACE_DETECTOR, backend.name());
+        editor.apply();
+    }
+
+    public void setBenchmarkBackends(boolean benchmark) {
+        mBenchmarkBackends = benchmark;
+        SharedPreferences.Editor editor = mSharedPrefs.edit();
+        editor.putBoolean(BENCHMARK_BACKENDS, benchmark);
+        editor.apply();
+    }
+
+    public void setShowFrameStats(boolean show) {
+        mShowFrameStats = show;
+        SharedPreferences.Editor editor = mSharedPrefs.edit();
+        editor.putBoolean(SHOW_FRAME_STATS, show);
+        editor.apply();
+    }
+
+    public void setShowCameraPreview(boolean show) {
+        mShowCameraPreview = show;
+        SharedPreferences.Editor editor = mSharedPrefs.edit();
+        editor.putBoolean(SHOW_CAMERA_PREVIEW, show);
+        editor.apply();
+    }
+
+    public void setRecordFrames(boolean record) {
+        mRecordFrames = record;
+        SharedPreferences.Editor editor = mSharedPrefs.edit();
+        editor.putBoolean(RECORD_FRAMES, record);
+        editor.apply();
+    }
+
     public boolean getIsCelsius() {
         return ForecastRequest.UNITS_SI.equals(mForecastUnits);
     }
@@ -164,6 +287,147 @@ public class ConfigurationSettings {
         return mStockTickerSymbol;
     }
 
+    /**
+     * Width in pixels camera frames are downscaled to before face detection, 0 for full resolution
+     */
+    public int getDetectionWidth() {
+        return mDetectionWidth;
+    }
+
+    /**
+     * Fraction of the camera thumbnail that has to change before face detection wakes up
+     */
+    public float getMotionThreshold() {
+        return mMotionThreshold;
+    }
+
+    /**
+     * How quickly the motion background adapts to the scene, per frame
+     */
+    public float getMotionLearningRate() {
+        return mMotionLearningRate;
+    }
+
+    /**
+     * How long a face has to be seen before the mirror lights up
+     */
+    public long getPresenceEnterMillis() {
+        return mPresenceEnterMillis;
+    }
+
+    /**
+     * How long a face has to be gone before the mirror goes dark
+     */
+    public long getPresenceExitMillis() {
+        return mPresenceExitMillis;
+    }
+
+    /**
+     * Detection confidence, 0 to 1, needed to count someone as present
+     */
+    public float getPresenceConfidence() {
+        return mPresenceConfidence;
+    }
+
+    /**
+     * Smallest face, in camera pixels, detection needs. Drives the camera preview size.
+     */
+    public int getMinFacePixels() {
+        return mMinFacePixels;
+    }
+
+    /**
+     * Fraction of the camera frame height a face in front of the mirror takes up
+     */
+    public float getFaceFraction() {
+        return mFaceFraction;
+    }
+
+    /**
+     * How long nobody has to be around before the camera drops to its idle rate
+     */
+    public long getIdleAfterMillis() {
+        return mIdleAfterMillis;
+    }
+
+    /**
+     * Time between processed camera frames while idle
+     */
+    public long getIdleSampleMillis() {
+        return mIdleSampleMillis;
+    }
+
+    /**
+     * How long past its expiry a cached forecast may still be used, 0 to go by the server's headers alone
+     */
+    public int getForecastMaxStaleMinutes() {
+        return mForecastMaxStaleMinutes;
+    }
+
+    public int getXKCDMaxStaleMinutes() {
+        return mXKCDMaxStaleMinutes;
+    }
+
+    public int getStockMaxStaleMinutes() {
+        return mStockMaxStaleMinutes;
+    }
+
+    public int getNewsMaxStaleMinutes() {
+        return mNewsMaxStaleMinutes;
+    }
+
+    /**
+     * Threads to split face detection across. Unless set, all cores but one for the camera, up to 4.
+     */
+    public int getDetectionThreads() {
+        if (mDetectionThreads > 0) {
+            return mDetectionThreads;
+        }
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * @return The number of detection threads set up, or 0 if it's picked from the number of cores
+     */
+    public int getConfiguredDetectionThreads() {
+        return mDetectionThreads;
+    }
+
+    /**
+     * Which face detector the mirror runs. Backends that aren't available fall back to the LBP cascade.
+     */
+    public FaceDetectorBackend getFaceDetectorBackend() {
+        return mFaceDetectorBackend;
+    }
+
+    /**
+     * Whether debug builds compare every face detector backend on the last recorded frames at start up
+     */
+    public boolean isBenchmarkingBackends() {
+        return mBenchmarkBackends;
+    }
+
+    /**
+     * Whether debug builds show per stage frame latencies and frame rates over the mirror
+     */
+    public boolean isShowingFrameStats() {
+        return mShowFrameStats;
+    }
+
+    /**
+     * Whether debug builds draw the camera preview. Otherwise frames are analysed without being drawn.
+     */
+    public boolean isShowingCameraPreview() {
+        return mShowCameraPreview;
+    }
+
+    /**
+     * Whether debug builds dump camera frames to external storage for the replay benchmark
+     */
+    public boolean isRecordingFrames() {
+        return mRecordFrames;
+    }
+
     public static boolean isDebugBuild() {
         return BuildConfig.DEBUG;
     }
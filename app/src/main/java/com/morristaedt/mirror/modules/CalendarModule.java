@@ -18,17 +18,26 @@ import java.util.Date;
  * Created by alex on 12/09/15.
  */
 public class CalendarModule {
+
+    private static final long DEADLINE_MILLIS = 10 * 1000;
+
     public interface CalendarListener {
         void onCalendarUpdate(String title, String details);
     }
 
-    public static void getCalendarEvents(final Context context, final CalendarListener calendarListener) {
-        new AsyncTask<Void, Void, Void>() {
+    public static void getCalendarEvents(final Context context, final RefreshScheduler.Refresh refresh, final CalendarListener calendarListener) {
+        FetchOrchestrator.get().execute("calendar", DEADLINE_MILLIS, new AsyncTask<Void, Void, Void>() {
             String title = null;
             String details = null;
 
+            @Override
+            protected void onCancelled(Void result) {
+                refresh.done(false);
+            }
+
             @Override
             protected void onPostExecute(Void aVoid) {
+                refresh.done(true);
                 calendarListener.onCalendarUpdate(title, details);
             }
 
@@ -81,6 +90,6 @@ public class CalendarModule {
                 }
                 return null;
             }
-        }.execute();
+        });
     }
 }
@@ -0,0 +1,244 @@
+package com.morristaedt.mirror.modules;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the modules' fetches side by side on a small pool, instead of one after the other on
+ * AsyncTask's serial executor, so one slow server doesn't hold up every other module.
+ *
+ * Each fetch has a deadline. A fetch still running at its deadline is cancelled, so its module
+ * gets onCancelled instead of onPostExecute. A blocked socket read only notices at the HTTP
+ * client's read timeout, but the module and the results below don't wait for that.
+ *
+ * Fetches that overlap in time are collected into one result set, handed to the
+ * {@link FanInListener} once the last of them is done, slowest first.
+ *
+ * Call everything on the main thread.
+ */
+public class FetchOrchestrator {
+
+    private static final String TAG = "FetchOrchestrator";
+    private static final int THREADS = 4;
+
+    public enum Outcome {
+        COMPLETED,
+        CANCELLED,
+        TIMED_OUT
+    }
+
+    public static class Result {
+        private final String mModule;
+        private final Outcome mOutcome;
+        private final long mQueuedMillis;
+        private final long mTotalMillis;
+
+        Result(String module, Outcome outcome, long queuedMillis, long totalMillis) {
+            mModule = module;
+            mOutcome = outcome;
+            mQueuedMillis = queuedMillis;
+            mTotalMillis = totalMillis;
+        }
+
+        public String getModule() {
+            return mModule;
+        }
+
+        public Outcome getOutcome() {
+            return mOutcome;
+        }
+
+        /**
+         * @return Time from being handed to the orchestrator to being done, waiting for a thread included
+         */
+        public long getTotalMillis() {
+            return mTotalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return mModule + " " + mOutcome.name().toLowerCase() + " after " + mTotalMillis + "ms, "
+                    + mQueuedMillis + "ms of it waiting for a thread";
+        }
+    }
+
+    public interface FanInListener {
+        /**
+         * @param results Every fetch since the last call, slowest first
+         */
+        void onFetchesFinished(List<Result> results);
+    }
+
+    private static final Comparator<Result> SLOWEST_FIRST = new Comparator<Result>() {
+        @Override
+        public int compare(Result lhs, Result rhs) {
+            return lhs.mTotalMillis < rhs.mTotalMillis ? 1 : lhs.mTotalMillis > rhs.mTotalMillis ? -1 : 0;
+        }
+    };
+
+    private static FetchOrchestrator sInstance;
+
+    private final ExecutorService mPool = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        private final AtomicInteger mThreads = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "Fetch #" + mThreads.incrementAndGet());
+        }
+    });
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final Map<String, Result> mLatest = new TreeMap<>();
+    private final List<Result> mBatch = new ArrayList<>();
+    private int mInFlight;
+
+    @Nullable
+    private FanInListener mFanInListener;
+
+    /**
+     * @return The orchestrator all modules share, so the pool bounds them all together
+     */
+    public static synchronized FetchOrchestrator get() {
+        if (sInstance == null) {
+            sInstance = new FetchOrchestrator();
+        }
+        return sInstance;
+    }
+
+    public void setFanInListener(@Nullable FanInListener listener) {
+        mFanInListener = listener;
+    }
+
+    /**
+     * Run a module's fetch on the pool, in place of {@link AsyncTask#execute}
+     *
+     * @param module         Name for the results
+     * @param deadlineMillis How long the fetch gets, waiting for a thread included
+     * @param task           A new task, the module's onCancelled runs if it misses its deadline
+     */
+    public void execute(String module, long deadlineMillis, AsyncTask<Void, ?, ?> task) {
+        final Fetch fetch = new Fetch(module, task);
+        mInFlight++;
+        task.executeOnExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mPool.execute(fetch.wrap(command));
+            }
+        });
+        mHandler.postDelayed(fetch, deadlineMillis);
+    }
+
+    /**
+     * @return Latest fetch of each module, slowest first
+     */
+    public List<Result> getLatestResults() {
+        List<Result> results = new ArrayList<>(mLatest.values());
+        Collections.sort(results, SLOWEST_FIRST);
+        return results;
+    }
+
+    /**
+     * @return One line per module, slowest first
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Result result : getLatestResults()) {
+            report.append(result).append('\n');
+        }
+        return report.toString().trim();
+    }
+
+    private void onFinished(Result result) {
+        mLatest.put(result.mModule, result);
+        mBatch.add(result);
+        mInFlight--;
+        if (result.mOutcome == Outcome.TIMED_OUT) {
+            Log.w(TAG, result.toString());
+        }
+
+        if (mInFlight == 0) {
+            List<Result> results = new ArrayList<>(mBatch);
+            mBatch.clear();
+            Collections.sort(results, SLOWEST_FIRST);
+            if (mFanInListener != null) {
+                mFanInListener.onFetchesFinished(results);
+            }
+        }
+    }
+
+    /**
+     * One fetch. Runs as its own deadline.
+     */
+    private class Fetch implements Runnable {
+        private final String mModule;
+        private final AsyncTask<Void, ?, ?> mTask;
+        private final long mQueuedNanos = System.nanoTime();
+        // Written on the pool thread, read on the main thread after the message that follows it
+        private volatile long mStartedNanos;
+        private boolean mDone;
+
+        Fetch(String module, AsyncTask<Void, ?, ?> task) {
+            mModule = module;
+            mTask = task;
+        }
+
+        Runnable wrap(final Runnable command) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    mStartedNanos = System.nanoTime();
+                    try {
+                        command.run();
+                    } finally {
+                        final long finishedNanos = System.nanoTime();
+                        mHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                finish(mTask.isCancelled() ? Outcome.CANCELLED : Outcome.COMPLETED, finishedNanos);
+                            }
+                        });
+                    }
+                }
+            };
+        }
+
+        /**
+         * Deadline
+         */
+        @Override
+        public void run() {
+            if (!mDone) {
+                mTask.cancel(true);
+                finish(Outcome.TIMED_OUT, System.nanoTime());
+            }
+        }
+
+        private void finish(Outcome outcome, long finishedNanos) {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            mHandler.removeCallbacks(this);
+
+            long startedNanos = mStartedNanos != 0 ? mStartedNanos : finishedNanos;
+            onFinished(new Result(mModule, outcome, (startedNanos - mQueuedNanos) / 1000000,
+                    (finishedNanos - mQueuedNanos) / 1000000));
+        }
+    }
+}
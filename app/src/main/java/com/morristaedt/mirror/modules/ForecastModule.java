@@ -5,6 +5,7 @@ import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.morristaedt.mirror.configuration.ConfigurationSettings;
+import com.morristaedt.mirror.network.RestServices;
 import com.morristaedt.mirror.requests.ForecastRequest;
 import com.morristaedt.mirror.requests.ForecastResponse;
 import com.morristaedt.mirror.requests.OpenWeatherRequest;
@@ -15,7 +16,6 @@ import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
 
-import retrofit.RestAdapter;
 import retrofit.RetrofitError;
 
 /**
@@ -23,6 +23,11 @@ import retrofit.RetrofitError;
  */
 public class ForecastModule {
 
+    private static final long DEADLINE_MILLIS = 15 * 1000;
+
+    private static final String FORECAST_IO_ENDPOINT = "https://api.forecast.io";
+    private static final String OPEN_WEATHER_ENDPOINT = "http://api.openweathermap.org";
+
     public interface ForecastListener {
         void onWeatherToday(String weatherToday);
 
@@ -34,17 +39,15 @@ public class ForecastModule {
      * @param units     SI or IMPERIAL Units
      * @param lat       The latitude to search for
      * @param lon       The longitude to search for
+     * @param maxStaleMinutes How long past its expiry a cached forecast may still be used
+     * @param refresh   Told whether the forecast could be loaded
      */
-    public static void getForecastIOHourlyForecast(final String apiKey, final String units, final String lat, final String lon, final ForecastListener listener) {
-        new AsyncTask<Void, Void, ForecastResponse>() {
+    public static void getForecastIOHourlyForecast(final String apiKey, final String units, final String lat, final String lon, final int maxStaleMinutes, final RefreshScheduler.Refresh refresh, final ForecastListener listener) {
+        FetchOrchestrator.get().execute("forecast", DEADLINE_MILLIS, new AsyncTask<Void, Void, ForecastResponse>() {
 
             @Override
             protected ForecastResponse doInBackground(Void... params) {
-                RestAdapter restAdapter = new RestAdapter.Builder()
-                        .setEndpoint("https://api.forecast.io")
-                        .build();
-
-                ForecastRequest service = restAdapter.create(ForecastRequest.class);
+                ForecastRequest service = RestServices.get(FORECAST_IO_ENDPOINT, ForecastRequest.class, maxStaleMinutes);
                 String excludes = "minutely,daily,flags";
 
                 try {
@@ -55,8 +58,14 @@ public class ForecastModule {
                 }
             }
 
+            @Override
+            protected void onCancelled(ForecastResponse result) {
+                refresh.done(false);
+            }
+
             @Override
             protected void onPostExecute(ForecastResponse forecastResponse) {
+                refresh.done(forecastResponse != null);
                 if (forecastResponse != null) {
                     if (forecastResponse.currently != null) {
                         listener.onWeatherToday(forecastResponse.currently.getDisplayTemperature() + " " + forecastResponse.currently.summary);
@@ -93,7 +102,7 @@ public class ForecastModule {
 
                 return true;
             }
-        }.execute();
+        });
 
     }
 
@@ -102,18 +111,16 @@ public class ForecastModule {
      * @param units
      * @param lat
      * @param lon
+     * @param maxStaleMinutes How long past its expiry a cached forecast may still be used
+     * @param refresh  Told whether the forecast could be loaded
      * @param listener
      */
-    public static void getOpenWeatherForecast(final String apiKey, final String units, final String lat, final String lon, final ForecastListener listener) {
-        new AsyncTask<Void, Void, OpenWeatherResponse>() {
+    public static void getOpenWeatherForecast(final String apiKey, final String units, final String lat, final String lon, final int maxStaleMinutes, final RefreshScheduler.Refresh refresh, final ForecastListener listener) {
+        FetchOrchestrator.get().execute("forecast", DEADLINE_MILLIS, new AsyncTask<Void, Void, OpenWeatherResponse>() {
 
             @Override
             protected OpenWeatherResponse doInBackground(Void... params) {
-                RestAdapter restAdapter = new RestAdapter.Builder()
-                        .setEndpoint("http://api.openweathermap.org")
-                        .build();
-
-                OpenWeatherRequest service = restAdapter.create(OpenWeatherRequest.class);
+                OpenWeatherRequest service = RestServices.get(OPEN_WEATHER_ENDPOINT, OpenWeatherRequest.class, maxStaleMinutes);
 
                 try {
                     return service.getCurrentForecast(apiKey, lat, lon, getOpenWeatherUnits(units), Locale.getDefault().getLanguage());
@@ -123,8 +130,14 @@ public class ForecastModule {
                 }
             }
 
+            @Override
+            protected void onCancelled(OpenWeatherResponse result) {
+                refresh.done(false);
+            }
+
             @Override
             protected void onPostExecute(OpenWeatherResponse response) {
+                refresh.done(response != null);
                 if (response != null) {
                     if (response.main != null) {
                         listener.onWeatherToday(response.main.getDisplayTemperature() + " " + response.getWeatherDescription());
@@ -132,7 +145,7 @@ public class ForecastModule {
                 }
             }
 
-        }.execute();
+        });
 
     }
 
@@ -1,8 +1,12 @@
 package com.morristaedt.mirror.modules;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.morristaedt.mirror.vision.Gesture;
+import com.morristaedt.mirror.vision.PresenceStateMachine;
+
 import org.opencv.core.Rect;
 
 public class GesturesModule  {
@@ -10,10 +14,28 @@ public class GesturesModule  {
     private static final String TAG = "GesturesModule";
     private Context mContext;
 
+    private final PresenceStateMachine mPresence;
+
     private GesturesListener mCallBacks;
 
     public interface GesturesListener {
+        /**
+         * Called when someone arrives in front of the mirror or leaves, not on every frame
+         */
         void onFaceDetected(boolean faceDetected);
+
+        /**
+         * Called when the person at the mirror made a gesture, on the camera thread
+         */
+        void onGesture(Gesture gesture);
+    }
+
+    public GesturesModule() {
+        this(new PresenceStateMachine());
+    }
+
+    public GesturesModule(PresenceStateMachine presence) {
+        mPresence = presence;
     }
 
     public void setGesturesListener (GesturesListener listener) {
@@ -21,13 +43,28 @@ public class GesturesModule  {
     }
 
     public void receiveFrames (Rect[] facesArray) {
-        if (facesArray.length > 0) {
-            Log.v("GesturesModule",
-                    "Face Detected: " + facesArray.length);
-            mCallBacks.onFaceDetected(true);
+        if (mPresence.update(facesArray.length > 0, SystemClock.elapsedRealtime())) {
+            Log.v(TAG, "Presence changed: " + mPresence.getState() + ", faces: " + facesArray.length);
+            if (mCallBacks != null) {
+                mCallBacks.onFaceDetected(mPresence.isPresent());
+            }
+        }
+    }
+
+    /**
+     * Pass on a gesture from the camera, as long as somebody is actually at the mirror
+     */
+    public void receiveGesture(Gesture gesture) {
+        if (!mPresence.isPresent()) {
+            return;
         }
-        else {
-            mCallBacks.onFaceDetected(false);
+        Log.v(TAG, "Gesture: " + gesture);
+        if (mCallBacks != null) {
+            mCallBacks.onGesture(gesture);
         }
     }
+
+    public boolean isPresent() {
+        return mPresence.isPresent();
+    }
 }
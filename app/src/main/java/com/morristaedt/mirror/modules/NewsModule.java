@@ -3,35 +3,71 @@ package com.morristaedt.mirror.modules;
 import android.os.AsyncTask;
 import android.util.Log;
 
+import com.morristaedt.mirror.network.RestServices;
+import com.morristaedt.mirror.network.SharedHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.mcsoxford.rss.RSSConfig;
 import org.mcsoxford.rss.RSSFeed;
-import org.mcsoxford.rss.RSSReader;
-import org.mcsoxford.rss.RSSReaderException;
+import org.mcsoxford.rss.RSSParser;
+
+import java.io.IOException;
 
 /**
  * Created by alex on 21/09/15.
  */
 public class NewsModule {
+
+    private static final long DEADLINE_MILLIS = 20 * 1000;
+
     public interface NewsListener {
         void onNewNews(String headline);
     }
 
-    public static void getNewsHeadline(final NewsListener newsListener) {
-        new AsyncTask<Void, Void, String>() {
+    /**
+     * @param maxStaleMinutes How long past its expiry a cached feed may still be used
+     * @param refresh         Told whether the headline could be loaded
+     */
+    public static void getNewsHeadline(final int maxStaleMinutes, final RefreshScheduler.Refresh refresh, final NewsListener newsListener) {
+        FetchOrchestrator.get().execute("news", DEADLINE_MILLIS, new AsyncTask<Void, Void, String>() {
+            @Override
+            protected void onCancelled(String result) {
+                refresh.done(false);
+            }
+
             @Override
             protected void onPostExecute(String s) {
                 super.onPostExecute(s);
+                refresh.done(s != null);
                 newsListener.onNewNews(s);
             }
 
             @Override
             protected String doInBackground(Void... params) {
-                RSSReader rssReader = new RSSReader();
-                String url = "http://feeds.bbci.co.uk/news/world/rss.xml?edition=uk";
+                // Fetched through the shared client rather than RSSReader, so the feed is cached
+                Request.Builder request = new Request.Builder()
+                        .url("http://feeds.bbci.co.uk/news/world/rss.xml?edition=uk");
+                if (maxStaleMinutes > 0) {
+                    request.header("Cache-Control", RestServices.maxStale(maxStaleMinutes));
+                }
                 try {
-                    RSSFeed feed = rssReader.load(url);
-                    return feed.getItems().get(0).getTitle();
-                } catch (RSSReaderException e) {
-                    Log.e("NewsModule", "Error parsing RSS");
+                    Response response = SharedHttpClient.get().newCall(request.build()).execute();
+                    ResponseBody body = response.body();
+                    try {
+                        if (!response.isSuccessful()) {
+                            Log.e("NewsModule", "Error loading RSS: " + response.code());
+                            return null;
+                        }
+                        RSSFeed feed = new RSSParser(new RSSConfig()).parse(body.byteStream());
+                        return feed.getItems().get(0).getTitle();
+                    } finally {
+                        // Hands the connection back to the pool and lets the cache commit the feed
+                        body.close();
+                    }
+                } catch (IOException e) {
+                    Log.e("NewsModule", "Error loading RSS");
                     return null;
                 } catch (Exception e) {
                     // not great to catch general exceptions, but this lib is being sketchy
@@ -39,6 +75,6 @@ public class NewsModule {
                     return null;
                 }
             }
-        }.execute();
+        });
     }
 }
@@ -0,0 +1,252 @@
+package com.morristaedt.mirror.modules;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Refreshes every module on its own schedule. Each module declares how often it wants refreshing,
+ * how much to spread that out, and how to back off while it fails. Refreshes start on the main
+ * thread, so modules can start their AsyncTasks straight away.
+ *
+ * Whoever owns the scheduler calls {@link #start()} and {@link #stop()}; nothing runs outside that.
+ */
+public class RefreshScheduler {
+
+    private static final String TAG = "RefreshScheduler";
+
+    // A refresh that hasn't reported back by then counts as failed, so its module isn't stuck
+    private static final long REFRESH_TIMEOUT_MILLIS = 2 * 60 * 1000;
+
+    public interface Task {
+        /**
+         * Start refreshing the module, and report how it went on refresh when done
+         */
+        void refresh(Refresh refresh);
+    }
+
+    public enum Outcome {
+        SUCCEEDED,
+        FAILED,
+        SKIPPED
+    }
+
+    /**
+     * How often a module refreshes
+     */
+    public static class Policy {
+        private final long mIntervalMillis;
+        private final float mJitter;
+        private final long mFirstRetryMillis;
+        private final long mMaxRetryMillis;
+
+        /**
+         * @param intervalMillis   Time between successful refreshes
+         * @param jitter           Fraction of the interval to randomly add or take off, so modules don't
+         *                         all refresh at once
+         * @param firstRetryMillis Wait after the first failure, doubled for every further one
+         * @param maxRetryMillis   Longest wait between retries
+         */
+        public Policy(long intervalMillis, float jitter, long firstRetryMillis, long maxRetryMillis) {
+            mIntervalMillis = intervalMillis;
+            mJitter = jitter;
+            mFirstRetryMillis = firstRetryMillis;
+            mMaxRetryMillis = maxRetryMillis;
+        }
+
+        long getDelayMillis(int consecutiveFailures, Random random) {
+            long delay = mIntervalMillis;
+            if (consecutiveFailures > 0) {
+                delay = mFirstRetryMillis << Math.min(consecutiveFailures - 1, 20);
+                delay = Math.min(Math.min(delay, mMaxRetryMillis), mIntervalMillis);
+            }
+            return Math.max(0, delay + (long) (delay * mJitter * (random.nextFloat() * 2 - 1)));
+        }
+    }
+
+    /**
+     * One run of a task. Only the first report counts, and none do once the scheduler stopped.
+     */
+    public class Refresh implements Runnable {
+        private final Entry mEntry;
+        private boolean mDone;
+
+        private Refresh(Entry entry) {
+            mEntry = entry;
+        }
+
+        /**
+         * @return When the module last refreshed successfully, wall clock, or 0 if it never did
+         */
+        public long getLastSuccessMillis() {
+            return mEntry.mLastSuccessMillis;
+        }
+
+        public void done(boolean succeeded) {
+            finish(succeeded ? Outcome.SUCCEEDED : Outcome.FAILED);
+        }
+
+        /**
+         * Nothing to refresh right now, i.e. outside the hours the module shows
+         */
+        public void skipped() {
+            finish(Outcome.SKIPPED);
+        }
+
+        /**
+         * Timed out
+         */
+        @Override
+        public void run() {
+            Log.w(TAG, mEntry.mName + " refresh timed out");
+            finish(Outcome.FAILED);
+        }
+
+        private void finish(Outcome outcome) {
+            if (mDone || mEntry.mRefresh != this) {
+                return;
+            }
+            mDone = true;
+            mHandler.removeCallbacks(this);
+            mEntry.onFinished(outcome);
+        }
+    }
+
+    private class Entry implements Runnable {
+        private final String mName;
+        private final Policy mPolicy;
+        private final Task mTask;
+
+        private Refresh mRefresh;
+        private int mConsecutiveFailures;
+        private long mRefreshes;
+        private long mFailures;
+        private long mLastRefreshMillis;
+        private long mLastSuccessMillis;
+        private Outcome mLastOutcome;
+        private long mNextRefreshUptime;
+
+        Entry(String name, Policy policy, Task task) {
+            mName = name;
+            mPolicy = policy;
+            mTask = task;
+        }
+
+        @Override
+        public void run() {
+            mRefresh = new Refresh(this);
+            mHandler.postDelayed(mRefresh, REFRESH_TIMEOUT_MILLIS);
+            try {
+                mTask.refresh(mRefresh);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error refreshing " + mName, e);
+                mRefresh.done(false);
+            }
+        }
+
+        void onFinished(Outcome outcome) {
+            mRefresh = null;
+            mLastOutcome = outcome;
+            mLastRefreshMillis = System.currentTimeMillis();
+            if (outcome == Outcome.SUCCEEDED) {
+                mLastSuccessMillis = mLastRefreshMillis;
+            }
+            if (outcome == Outcome.FAILED) {
+                mConsecutiveFailures++;
+                mFailures++;
+            } else {
+                mConsecutiveFailures = 0;
+            }
+            if (outcome != Outcome.SKIPPED) {
+                mRefreshes++;
+            }
+
+            long delay = mPolicy.getDelayMillis(mConsecutiveFailures, mRandom);
+            schedule(delay);
+            Log.v(TAG, mName + " " + outcome.name().toLowerCase() + ", next in " + delay / 1000 + "s");
+        }
+
+        void schedule(long delayMillis) {
+            mNextRefreshUptime = SystemClock.uptimeMillis() + delayMillis;
+            mHandler.postDelayed(this, delayMillis);
+        }
+
+        @Override
+        public String toString() {
+            String last = mLastOutcome == null ? "never refreshed"
+                    : "last " + mLastOutcome.name().toLowerCase() + " at " + DateFormat.getTimeInstance().format(new Date(mLastRefreshMillis));
+            long next = Math.max(0, mNextRefreshUptime - SystemClock.uptimeMillis()) / 1000;
+            return String.format("%s: %s, %d refreshes, %d failed, next in %ds", mName, last, mRefreshes, mFailures,
+                    mRefresh != null ? 0 : next);
+        }
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Random mRandom = new Random();
+    private final List<Entry> mEntries = new ArrayList<>();
+    private boolean mStarted;
+
+    /**
+     * Add a module, before {@link #start()}
+     */
+    public void add(String name, Policy policy, Task task) {
+        mEntries.add(new Entry(name, policy, task));
+    }
+
+    /**
+     * Refresh every module now, then on their schedules
+     */
+    public void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        for (Entry entry : mEntries) {
+            entry.schedule(0);
+        }
+    }
+
+    /**
+     * Cancel all scheduled refreshes. Reports from refreshes still running are ignored.
+     */
+    public void stop() {
+        mStarted = false;
+        for (Entry entry : mEntries) {
+            mHandler.removeCallbacks(entry);
+            if (entry.mRefresh != null) {
+                mHandler.removeCallbacks(entry.mRefresh);
+                entry.mRefresh = null;
+            }
+        }
+    }
+
+    /**
+     * @return Refreshes of all modules that weren't skipped, failed ones included
+     */
+    public long getRefreshCount() {
+        long refreshes = 0;
+        for (Entry entry : mEntries) {
+            refreshes += entry.mRefreshes;
+        }
+        return refreshes;
+    }
+
+    /**
+     * @return One line per module with its last refresh and outcome
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Entry entry : mEntries) {
+            report.append(entry).append('\n');
+        }
+        return report.toString().trim();
+    }
+}
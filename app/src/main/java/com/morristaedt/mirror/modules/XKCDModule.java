@@ -7,12 +7,12 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.morristaedt.mirror.configuration.ConfigurationSettings;
+import com.morristaedt.mirror.network.RestServices;
 import com.morristaedt.mirror.requests.XKCDRequest;
 import com.morristaedt.mirror.requests.XKCDResponse;
 
 import java.util.Calendar;
 
-import retrofit.RestAdapter;
 import retrofit.RetrofitError;
 
 /**
@@ -20,6 +20,10 @@ import retrofit.RetrofitError;
  */
 public class XKCDModule {
 
+    private static final long DEADLINE_MILLIS = 15 * 1000;
+
+    private static final String ENDPOINT = "http://xkcd.com";
+
     public interface XKCDListener {
         void onNewXKCDToday(String url);
     }
@@ -27,18 +31,16 @@ public class XKCDModule {
     /**
      * Fetch the the latest xkcd comic, but only show it if its new today
      *
+     * @param maxStaleMinutes How long past its expiry a cached comic may still be used
+     * @param refresh         Told whether the comic could be loaded
      * @param listener
      */
-    public static void getXKCDForToday(final XKCDListener listener) {
-        new AsyncTask<Void, Void, XKCDResponse>() {
+    public static void getXKCDForToday(final int maxStaleMinutes, final RefreshScheduler.Refresh refresh, final XKCDListener listener) {
+        FetchOrchestrator.get().execute("xkcd", DEADLINE_MILLIS, new AsyncTask<Void, Void, XKCDResponse>() {
 
             @Override
             protected XKCDResponse doInBackground(Void... params) {
-                RestAdapter restAdapter = new RestAdapter.Builder()
-                        .setEndpoint("http://xkcd.com")
-                        .build();
-
-                XKCDRequest service = restAdapter.create(XKCDRequest.class);
+                XKCDRequest service = RestServices.get(ENDPOINT, XKCDRequest.class, maxStaleMinutes);
                 try {
                     return service.getLatestXKCD();
                 } catch (RetrofitError e) {
@@ -47,8 +49,14 @@ public class XKCDModule {
                 }
             }
 
+            @Override
+            protected void onCancelled(XKCDResponse result) {
+                refresh.done(false);
+            }
+
             @Override
             protected void onPostExecute(@Nullable XKCDResponse xkcdResponse) {
+                refresh.done(xkcdResponse != null);
                 if (xkcdResponse != null && !TextUtils.isEmpty(xkcdResponse.img)) {
                     if (ConfigurationSettings.isDemoMode() || isTodaysXKCD(xkcdResponse)) {
                         listener.onNewXKCDToday(xkcdResponse.img);
@@ -62,7 +70,7 @@ public class XKCDModule {
                 Calendar today = Calendar.getInstance();
                 return xkcdResponse.day == today.get(Calendar.DAY_OF_MONTH) && xkcdResponse.month == (today.get(Calendar.MONTH) + 1) && xkcdResponse.year == today.get(Calendar.YEAR);
             }
-        }.execute();
+        });
 
     }
 }
@@ -5,12 +5,12 @@ import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.morristaedt.mirror.configuration.ConfigurationSettings;
+import com.morristaedt.mirror.network.RestServices;
 import com.morristaedt.mirror.requests.YahooFinanceRequest;
 import com.morristaedt.mirror.requests.YahooStockResponse;
 
 import java.math.BigDecimal;
 
-import retrofit.RestAdapter;
 import retrofit.RetrofitError;
 
 /**
@@ -18,6 +18,10 @@ import retrofit.RetrofitError;
  */
 public class YahooFinanceModule {
 
+    private static final long DEADLINE_MILLIS = 10 * 1000;
+
+    private static final String ENDPOINT = "http://query.yahooapis.com/v1/public";
+
     public interface StockListener {
         void onNewStockPrice(YahooStockResponse.YahooQuoteResponse quoteResponse);
     }
@@ -27,17 +31,13 @@ public class YahooFinanceModule {
      *
      * @param listener
      */
-    public static void getStockForToday(final String stockName, final StockListener listener) {
+    public static void getStockForToday(final String stockName, final int maxStaleMinutes, final RefreshScheduler.Refresh refresh, final StockListener listener) {
 
-        new AsyncTask<Void, Void, YahooStockResponse>() {
+        FetchOrchestrator.get().execute("stock", DEADLINE_MILLIS, new AsyncTask<Void, Void, YahooStockResponse>() {
 
             @Override
             protected YahooStockResponse doInBackground(Void... params) {
-                RestAdapter restAdapter = new RestAdapter.Builder()
-                        .setEndpoint("http://query.yahooapis.com/v1/public")
-                        .build();
-
-                YahooFinanceRequest service = restAdapter.create(YahooFinanceRequest.class);
+                YahooFinanceRequest service = RestServices.get(ENDPOINT, YahooFinanceRequest.class, maxStaleMinutes);
 
                 String query = "select * from yahoo.finance.quotes where symbol in (\"" + stockName + "\")";
                 String env = "http://datatables.org/alltables.env";
@@ -50,8 +50,14 @@ public class YahooFinanceModule {
                 }
             }
 
+            @Override
+            protected void onCancelled(YahooStockResponse result) {
+                refresh.done(false);
+            }
+
             @Override
             protected void onPostExecute(@Nullable YahooStockResponse stockResponse) {
+                refresh.done(stockResponse != null);
                 if (stockResponse != null && stockResponse.getQuoteResponse() != null) {
                     YahooStockResponse.YahooQuoteResponse quoteResponse = stockResponse.getQuoteResponse();
                     if (ConfigurationSettings.isDemoMode() || quoteResponse.getPercentageChange().abs().compareTo(BigDecimal.valueOf(0.03)) >= 0) {
@@ -61,7 +67,7 @@ public class YahooFinanceModule {
                 }
                 listener.onNewStockPrice(null);
             }
-        }.execute();
+        });
 
     }
 }
@@ -0,0 +1,130 @@
+package com.morristaedt.mirror.network;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Per host request latencies and connection reuse for everything going through
+ * {@link SharedHttpClient}. Thread safe, requests can run on any thread.
+ */
+public class HttpMetrics {
+
+    private final Map<String, HostStats> mHosts = new TreeMap<>();
+
+    // Connections that already carried a request. Weak, so closed connections don't pile up.
+    private final Map<Connection, Boolean> mUsedConnections = new WeakHashMap<>();
+
+    /**
+     * @return Application interceptor timing each call, including connecting and redirects
+     */
+    Interceptor newCallInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = chain.request();
+                long start = System.nanoTime();
+                boolean failed = true;
+                try {
+                    Response response = chain.proceed(request);
+                    failed = !response.isSuccessful() && response.code() != 304;
+                    recordCache(request.httpUrl().host(), response);
+                    return response;
+                } finally {
+                    recordCall(request.httpUrl().host(), System.nanoTime() - start, failed);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return Network interceptor noting whether each request went out on a reused connection
+     */
+    Interceptor newConnectionInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                recordConnection(chain.request().httpUrl().host(), chain.connection());
+                return chain.proceed(chain.request());
+            }
+        };
+    }
+
+    public synchronized void reset() {
+        mHosts.clear();
+    }
+
+    /**
+     * @return One line per host
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, HostStats> host : mHosts.entrySet()) {
+            report.append(host.getKey()).append(' ').append(host.getValue()).append('\n');
+        }
+        return report.toString().trim();
+    }
+
+    private synchronized void recordCall(String host, long nanos, boolean failed) {
+        HostStats stats = getHost(host);
+        stats.mCalls++;
+        if (failed) {
+            stats.mFailures++;
+        }
+        stats.mTotalNanos += nanos;
+        stats.mMaxNanos = Math.max(stats.mMaxNanos, nanos);
+    }
+
+    private synchronized void recordCache(String host, Response response) {
+        if (response.networkResponse() == null) {
+            if (response.cacheResponse() != null) {
+                getHost(host).mCacheHits++;
+            }
+        } else if (response.networkResponse().code() == 304) {
+            getHost(host).mNotModified++;
+        }
+    }
+
+    private synchronized void recordConnection(String host, Connection connection) {
+        HostStats stats = getHost(host);
+        stats.mNetworkRequests++;
+        if (connection != null && mUsedConnections.put(connection, Boolean.TRUE) != null) {
+            stats.mReusedConnections++;
+        }
+    }
+
+    private HostStats getHost(String host) {
+        HostStats stats = mHosts.get(host);
+        if (stats == null) {
+            stats = new HostStats();
+            mHosts.put(host, stats);
+        }
+        return stats;
+    }
+
+    private static class HostStats {
+        long mCalls;
+        long mFailures;
+        long mTotalNanos;
+        long mMaxNanos;
+        long mNetworkRequests;
+        long mReusedConnections;
+        long mCacheHits;
+        long mNotModified;
+
+        @Override
+        public String toString() {
+            return String.format("%d calls, %d failed, %.0fms average, %.0fms max, %d from cache, %d not modified, "
+                            + "%d of %d requests on reused connections",
+                    mCalls, mFailures, mCalls == 0 ? 0 : mTotalNanos / (mCalls * 1e6), mMaxNanos / 1e6,
+                    mCacheHits, mNotModified, mReusedConnections, mNetworkRequests);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.morristaedt.mirror.network;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import retrofit.RequestInterceptor;
+import retrofit.RestAdapter;
+import retrofit.client.OkClient;
+
+/**
+ * Retrofit services on the {@link SharedHttpClient}, built once per endpoint and interface.
+ * Building the proxies is reflection heavy, and the services are thread safe, so there's no
+ * reason to build them again for every request.
+ *
+ * A service can allow cached responses to go stale: a response past its expiry is still used without
+ * asking the server, for up to that long. Responses that haven't expired yet are used as the
+ * server's headers say, either way.
+ */
+public class RestServices {
+
+    private static final Map<String, RestAdapter> sAdapters = new HashMap<>();
+    private static final Map<String, Object> sServices = new HashMap<>();
+
+    /**
+     * @param endpoint Base url of the api, i.e. "http://xkcd.com"
+     * @param service  Retrofit interface for the api
+     */
+    public static <T> T get(String endpoint, Class<T> service) {
+        return get(endpoint, service, 0);
+    }
+
+    /**
+     * @param endpoint        Base url of the api, i.e. "http://xkcd.com"
+     * @param service         Retrofit interface for the api
+     * @param maxStaleMinutes How long past its expiry a cached response may still be used, 0 for not at all
+     */
+    public static synchronized <T> T get(String endpoint, Class<T> service, int maxStaleMinutes) {
+        String adapterKey = endpoint + " " + maxStaleMinutes;
+        String key = adapterKey + " " + service.getName();
+        Object cached = sServices.get(key);
+        if (cached == null) {
+            RestAdapter adapter = sAdapters.get(adapterKey);
+            if (adapter == null) {
+                RestAdapter.Builder builder = new RestAdapter.Builder()
+                        .setEndpoint(endpoint)
+                        .setClient(new OkClient(SharedHttpClient.get()));
+                if (maxStaleMinutes > 0) {
+                    builder.setRequestInterceptor(newMaxStaleInterceptor(maxStaleMinutes));
+                }
+                adapter = builder.build();
+                sAdapters.put(adapterKey, adapter);
+            }
+            cached = adapter.create(service);
+            sServices.put(key, cached);
+        }
+        return service.cast(cached);
+    }
+
+    /**
+     * @return Cache-Control value accepting cached responses up to the given time past their expiry.
+     * Servers that send must-revalidate still get asked.
+     */
+    public static String maxStale(int minutes) {
+        return "max-stale=" + minutes * 60;
+    }
+
+    private static RequestInterceptor newMaxStaleInterceptor(final int minutes) {
+        return new RequestInterceptor() {
+            @Override
+            public void intercept(RequestFacade request) {
+                request.addHeader("Cache-Control", maxStale(minutes));
+            }
+        };
+    }
+}
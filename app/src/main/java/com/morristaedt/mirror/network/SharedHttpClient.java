@@ -0,0 +1,66 @@
+package com.morristaedt.mirror.network;
+
+import android.content.Context;
+
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one HTTP client for the whole process, so connections and TLS sessions are kept alive and
+ * reused between modules and refreshes instead of being set up again for every request.
+ * OkHttp asks for gzip and unzips responses itself.
+ *
+ * Once {@link #init(Context)} has run, responses are cached on disk. The cache follows the
+ * server's Cache-Control headers and revalidates stale responses with If-None-Match and
+ * If-Modified-Since, so an unchanged response costs a 304 instead of the whole body.
+ */
+public class SharedHttpClient {
+
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    private static final long READ_TIMEOUT_SECONDS = 20;
+    private static final String CACHE_DIRECTORY = "http";
+    private static final long CACHE_BYTES = 10 * 1024 * 1024;
+
+    private static final HttpMetrics sMetrics = new HttpMetrics();
+    private static OkHttpClient sClient;
+
+    public static synchronized OkHttpClient get() {
+        if (sClient == null) {
+            OkHttpClient client = new OkHttpClient();
+            client.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MILLIS));
+            client.setConnectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            client.setReadTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            client.interceptors().add(sMetrics.newCallInterceptor());
+            client.networkInterceptors().add(sMetrics.newConnectionInterceptor());
+            sClient = client;
+        }
+        return sClient;
+    }
+
+    /**
+     * Give the client its disk cache. Call once, before the first request.
+     */
+    public static void init(Context context) {
+        init(new File(context.getCacheDir(), CACHE_DIRECTORY));
+    }
+
+    /**
+     * Give the client its disk cache in the given directory, i.e. a temporary one in tests
+     */
+    static synchronized void init(File directory) {
+        OkHttpClient client = get();
+        if (client.getCache() == null) {
+            client.setCache(new Cache(directory, CACHE_BYTES));
+        }
+    }
+
+    public static HttpMetrics getMetrics() {
+        return sMetrics;
+    }
+}
@@ -8,7 +8,7 @@ import android.content.Intent;
 import android.os.PowerManager;
 import android.os.SystemClock;
 
-import com.morristaedt.mirror.MirrorActivity;
+import com.morristaedt.mirror.service.MirrorDataService;
 
 /**
  * Created by HannahMitt on 8/22/15.
@@ -44,9 +44,8 @@ public class AlarmReceiver extends BroadcastReceiver {
         PowerManager.WakeLock wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKE_LOCK);
         wakeLock.acquire();
 
-        Intent mainActivityIntent = new Intent(context, MirrorActivity.class);
-        mainActivityIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-        context.startActivity(mainActivityIntent);
+        // Brings the data service back if it was killed, it refreshes the modules on its own
+        MirrorDataService.start(context);
 
         wakeLock.release();
     }
@@ -0,0 +1,336 @@
+package com.morristaedt.mirror.service;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.morristaedt.mirror.configuration.ConfigurationSettings;
+import com.morristaedt.mirror.modules.BirthdayModule;
+import com.morristaedt.mirror.modules.CalendarModule;
+import com.morristaedt.mirror.modules.FetchOrchestrator;
+import com.morristaedt.mirror.modules.ForecastModule;
+import com.morristaedt.mirror.modules.NewsModule;
+import com.morristaedt.mirror.modules.RefreshScheduler;
+import com.morristaedt.mirror.modules.XKCDModule;
+import com.morristaedt.mirror.modules.YahooFinanceModule;
+import com.morristaedt.mirror.network.SharedHttpClient;
+import com.morristaedt.mirror.requests.YahooStockResponse;
+import com.morristaedt.mirror.utils.WeekUtil;
+
+import java.util.List;
+
+/**
+ * Keeps every module refreshed and holds on to their latest data, for as long as the mirror runs.
+ * The mirror binds to it to render that data, so it doesn't have to be recreated to stay fresh,
+ * and rebinding shows the data straight away instead of fetching it all again.
+ */
+public class MirrorDataService extends Service {
+
+    private static final String TAG = "MirrorDataService";
+
+    private static final long MINUTE_MILLIS = 60 * 1000;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+
+    // How often each module refreshes, and how it backs off while failing
+    private static final RefreshScheduler.Policy BIRTHDAY_REFRESH = new RefreshScheduler.Policy(HOUR_MILLIS, 0, MINUTE_MILLIS, HOUR_MILLIS);
+    private static final RefreshScheduler.Policy NEWS_REFRESH = new RefreshScheduler.Policy(15 * MINUTE_MILLIS, 0.1f, MINUTE_MILLIS, 15 * MINUTE_MILLIS);
+    // Only a comic published today shows, so look again every hour until it's out. The cache makes that a conditional request.
+    private static final RefreshScheduler.Policy XKCD_REFRESH = new RefreshScheduler.Policy(HOUR_MILLIS, 0.1f, 5 * MINUTE_MILLIS, HOUR_MILLIS);
+    private static final RefreshScheduler.Policy CALENDAR_REFRESH = new RefreshScheduler.Policy(15 * MINUTE_MILLIS, 0.1f, MINUTE_MILLIS, 15 * MINUTE_MILLIS);
+    private static final RefreshScheduler.Policy STOCK_REFRESH = new RefreshScheduler.Policy(5 * MINUTE_MILLIS, 0.1f, MINUTE_MILLIS, 5 * MINUTE_MILLIS);
+    private static final RefreshScheduler.Policy FORECAST_REFRESH = new RefreshScheduler.Policy(30 * MINUTE_MILLIS, 0.1f, MINUTE_MILLIS, 30 * MINUTE_MILLIS);
+    private static final RefreshScheduler.Policy DEBUG_STATS_REFRESH = new RefreshScheduler.Policy(HOUR_MILLIS, 0, HOUR_MILLIS, HOUR_MILLIS);
+
+    /**
+     * Everything the modules produce. Called on the main thread.
+     */
+    public interface DataListener extends XKCDModule.XKCDListener, YahooFinanceModule.StockListener,
+            ForecastModule.ForecastListener, NewsModule.NewsListener, CalendarModule.CalendarListener {
+        /**
+         * @param birthday Whose birthday it is, or null
+         */
+        void onBirthday(@Nullable String birthday);
+    }
+
+    public class LocalBinder extends Binder {
+        public MirrorDataService getService() {
+            return MirrorDataService.this;
+        }
+    }
+
+    private final IBinder mBinder = new LocalBinder();
+
+    private ConfigurationSettings mConfigSettings;
+    private RefreshScheduler mRefreshScheduler;
+    private long mCreatedMillis;
+    private int mBinds;
+
+    @Nullable
+    private DataListener mDataListener;
+
+    // The latest data of each module, handed to every new listener
+    private String mBirthday;
+    private String mHeadline;
+    private String mXKCDUrl;
+    private YahooStockResponse.YahooQuoteResponse mQuote;
+    private String mWeatherToday;
+    private boolean mHasBikeHint;
+    private boolean mShowBikeToday;
+    private boolean mShouldBike;
+    private String mCalendarTitle;
+    private String mCalendarDetails;
+
+    public static void start(Context context) {
+        context.startService(new Intent(context, MirrorDataService.class));
+    }
+
+    public static void stop(Context context) {
+        context.stopService(new Intent(context, MirrorDataService.class));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mCreatedMillis = SystemClock.elapsedRealtime();
+        mConfigSettings = new ConfigurationSettings(this);
+        mRefreshScheduler = newRefreshScheduler();
+        if (ConfigurationSettings.isDebugBuild()) {
+            FetchOrchestrator.get().setFanInListener(mFanInListener);
+        }
+        mRefreshScheduler.start();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        mBinds++;
+        return mBinder;
+    }
+
+    @Override
+    public boolean onUnbind(Intent intent) {
+        mDataListener = null;
+        // Have onRebind called, so every bind is counted
+        return true;
+    }
+
+    @Override
+    public void onRebind(Intent intent) {
+        mBinds++;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mRefreshScheduler.stop();
+        FetchOrchestrator.get().setFanInListener(null);
+        Log.v(TAG, toString());
+    }
+
+    /**
+     * @param listener Gets the latest data of every module right away, then every update. Null to stop.
+     */
+    public void setDataListener(@Nullable DataListener listener) {
+        mDataListener = listener;
+        if (listener == null) {
+            return;
+        }
+
+        listener.onBirthday(mBirthday);
+        listener.onNewNews(mHeadline);
+        listener.onNewXKCDToday(mXKCDUrl);
+        listener.onNewStockPrice(mQuote);
+        listener.onWeatherToday(mWeatherToday);
+        if (mHasBikeHint) {
+            listener.onShouldBike(mShowBikeToday, mShouldBike);
+        }
+        listener.onCalendarUpdate(mCalendarTitle, mCalendarDetails);
+    }
+
+    /**
+     * @return How long the service has run, how often it was bound, each module's refreshes and
+     * how long their last fetches took
+     */
+    @Override
+    public String toString() {
+        return "Up " + (SystemClock.elapsedRealtime() - mCreatedMillis) / MINUTE_MILLIS + " minutes, "
+                + mBinds + " binds, " + mRefreshScheduler.getRefreshCount() + " refreshes:\n" + mRefreshScheduler
+                + "\nLast fetches, slowest first:\n" + FetchOrchestrator.get();
+    }
+
+    private RefreshScheduler newRefreshScheduler() {
+        RefreshScheduler scheduler = new RefreshScheduler();
+
+        scheduler.add("birthday", BIRTHDAY_REFRESH, new RefreshScheduler.Task() {
+            @Override
+            public void refresh(RefreshScheduler.Refresh refresh) {
+                mBirthday = BirthdayModule.getBirthday();
+                if (mDataListener != null) {
+                    mDataListener.onBirthday(mBirthday);
+                }
+                refresh.done(true);
+            }
+        });
+
+        scheduler.add("news", NEWS_REFRESH, new RefreshScheduler.Task() {
+            @Override
+            public void refresh(RefreshScheduler.Refresh refresh) {
+                if (mConfigSettings.showNewsHeadline()) {
+                    NewsModule.getNewsHeadline(mConfigSettings.getNewsMaxStaleMinutes(), refresh, mNewsListener);
+                } else {
+                    refresh.skipped();
+                }
+            }
+        });
+
+        scheduler.add("xkcd", XKCD_REFRESH, new RefreshScheduler.Task() {
+            @Override
+            public void refresh(RefreshScheduler.Refresh refresh) {
+                if (mConfigSettings.showXKCD()) {
+                    XKCDModule.getXKCDForToday(mConfigSettings.getXKCDMaxStaleMinutes(), refresh, mXKCDListener);
+                } else {
+                    refresh.skipped();
+                }
+            }
+        });
+
+        scheduler.add("calendar", CALENDAR_REFRESH, new RefreshScheduler.Task() {
+            @Override
+            public void refresh(RefreshScheduler.Refresh refresh) {
+                if (mConfigSettings.showNextCalendarEvent()) {
+                    CalendarModule.getCalendarEvents(MirrorDataService.this, refresh, mCalendarListener);
+                } else {
+                    refresh.skipped();
+                }
+            }
+        });
+
+        scheduler.add("stock", STOCK_REFRESH, new RefreshScheduler.Task() {
+            @Override
+            public void refresh(RefreshScheduler.Refresh refresh) {
+                // Live while the market is open, then the day's change once after it closed
+                boolean closingChange = WeekUtil.isWeekdayAfterClose() && refresh.getLastSuccessMillis() < WeekUtil.getTodaysCloseMillis();
+                if (mConfigSettings.showStock() && (ConfigurationSettings.isDemoMode() || WeekUtil.isMarketHours() || closingChange)) {
+                    YahooFinanceModule.getStockForToday(mConfigSettings.getStockTickerSymbol(), mConfigSettings.getStockMaxStaleMinutes(), refresh, mStockListener);
+                } else {
+                    refresh.skipped();
+                }
+            }
+        });
+
+        scheduler.add("forecast", FORECAST_REFRESH, new RefreshScheduler.Task() {
+            @Override
+            public void refresh(RefreshScheduler.Refresh refresh) {
+                // Get the API key for whichever weather service API key is available
+                // These should be declared as a string in xml
+                int forecastApiKeyRes = getResources().getIdentifier("dark_sky_api_key", "string", getPackageName());
+                int openWeatherApiKeyRes = getResources().getIdentifier("open_weather_api_key", "string", getPackageName());
+
+                if (forecastApiKeyRes != 0) {
+                    ForecastModule.getForecastIOHourlyForecast(getString(forecastApiKeyRes), mConfigSettings.getForecastUnits(), mConfigSettings.getLatitude(), mConfigSettings.getLongitude(), mConfigSettings.getForecastMaxStaleMinutes(), refresh, mForecastListener);
+                } else if (openWeatherApiKeyRes != 0) {
+                    ForecastModule.getOpenWeatherForecast(getString(openWeatherApiKeyRes), mConfigSettings.getForecastUnits(), mConfigSettings.getLatitude(), mConfigSettings.getLongitude(), mConfigSettings.getForecastMaxStaleMinutes(), refresh, mForecastListener);
+                } else {
+                    refresh.skipped();
+                }
+            }
+        });
+
+        if (ConfigurationSettings.isDebugBuild()) {
+            scheduler.add("stats", DEBUG_STATS_REFRESH, new RefreshScheduler.Task() {
+                @Override
+                public void refresh(RefreshScheduler.Refresh refresh) {
+                    Log.d(TAG, MirrorDataService.this.toString());
+                    Log.d(TAG, "HTTP in the last hour:\n" + SharedHttpClient.getMetrics());
+                    SharedHttpClient.getMetrics().reset();
+                    refresh.done(true);
+                }
+            });
+        }
+
+        return scheduler;
+    }
+
+    private FetchOrchestrator.FanInListener mFanInListener = new FetchOrchestrator.FanInListener() {
+        @Override
+        public void onFetchesFinished(List<FetchOrchestrator.Result> results) {
+            if (results.size() > 1) {
+                Log.d(TAG, results.size() + " fetches, slowest " + results.get(0));
+            }
+        }
+    };
+
+    /*
+    Keep the latest data of each module and pass it on
+     */
+
+    private XKCDModule.XKCDListener mXKCDListener = new XKCDModule.XKCDListener() {
+        @Override
+        public void onNewXKCDToday(String url) {
+            mXKCDUrl = url;
+            if (mDataListener != null) {
+                mDataListener.onNewXKCDToday(url);
+            }
+        }
+    };
+
+    private YahooFinanceModule.StockListener mStockListener = new YahooFinanceModule.StockListener() {
+        @Override
+        public void onNewStockPrice(YahooStockResponse.YahooQuoteResponse quoteResponse) {
+            mQuote = quoteResponse;
+            if (mDataListener != null) {
+                mDataListener.onNewStockPrice(quoteResponse);
+            }
+        }
+    };
+
+    private ForecastModule.ForecastListener mForecastListener = new ForecastModule.ForecastListener() {
+        @Override
+        public void onWeatherToday(String weatherToday) {
+            mWeatherToday = weatherToday;
+            if (mDataListener != null) {
+                mDataListener.onWeatherToday(weatherToday);
+            }
+        }
+
+        @Override
+        public void onShouldBike(boolean showToday, boolean shouldBike) {
+            mHasBikeHint = true;
+            mShowBikeToday = showToday;
+            mShouldBike = shouldBike;
+            if (mDataListener != null) {
+                mDataListener.onShouldBike(showToday, shouldBike);
+            }
+        }
+    };
+
+    private NewsModule.NewsListener mNewsListener = new NewsModule.NewsListener() {
+        @Override
+        public void onNewNews(String headline) {
+            mHeadline = headline;
+            if (mDataListener != null) {
+                mDataListener.onNewNews(headline);
+            }
+        }
+    };
+
+    private CalendarModule.CalendarListener mCalendarListener = new CalendarModule.CalendarListener() {
+        @Override
+        public void onCalendarUpdate(String title, String details) {
+            mCalendarTitle = title;
+            mCalendarDetails = details;
+            if (mDataListener != null) {
+                mDataListener.onCalendarUpdate(title, details);
+            }
+        }
+    };
+}
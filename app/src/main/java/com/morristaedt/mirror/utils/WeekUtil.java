@@ -1,15 +1,18 @@
 package com.morristaedt.mirror.utils;
 
 import java.util.Calendar;
+import java.util.TimeZone;
 
 /**
  * Created by HannahMitt on 8/23/15.
  */
 public class WeekUtil {
 
+    // The stock exchanges the mirror follows keep New York hours, wherever the mirror is
+    private static final TimeZone MARKET_TIME_ZONE = TimeZone.getTimeZone("America/New_York");
+
     public static boolean isWeekday() {
-        int dayOfWeek = Calendar.getInstance().get(Calendar.DAY_OF_WEEK);
-        return dayOfWeek != Calendar.SATURDAY && dayOfWeek != Calendar.SUNDAY;
+        return isWeekday(Calendar.getInstance());
     }
 
     public static boolean afterFive() {
@@ -21,7 +24,37 @@ public class WeekUtil {
         return isWeekday() && !afterFive();
     }
 
-    public static boolean isWeekdayAfterFive() {
-        return isWeekday() && afterFive();
+    /**
+     * Between half past nine and four on a weekday, New York time
+     */
+    public static boolean isMarketHours() {
+        Calendar now = Calendar.getInstance(MARKET_TIME_ZONE);
+        int minuteOfDay = now.get(Calendar.HOUR_OF_DAY) * 60 + now.get(Calendar.MINUTE);
+        return isWeekday(now) && minuteOfDay >= 9 * 60 + 30 && minuteOfDay < 16 * 60;
+    }
+
+    /**
+     * After four on a weekday, New York time, when the day's change is final
+     */
+    public static boolean isWeekdayAfterClose() {
+        Calendar now = Calendar.getInstance(MARKET_TIME_ZONE);
+        return isWeekday(now) && now.get(Calendar.HOUR_OF_DAY) >= 16;
+    }
+
+    /**
+     * @return Four o'clock today, New York time
+     */
+    public static long getTodaysCloseMillis() {
+        Calendar close = Calendar.getInstance(MARKET_TIME_ZONE);
+        close.set(Calendar.HOUR_OF_DAY, 16);
+        close.set(Calendar.MINUTE, 0);
+        close.set(Calendar.SECOND, 0);
+        close.set(Calendar.MILLISECOND, 0);
+        return close.getTimeInMillis();
+    }
+
+    private static boolean isWeekday(Calendar day) {
+        int dayOfWeek = day.get(Calendar.DAY_OF_WEEK);
+        return dayOfWeek != Calendar.SATURDAY && dayOfWeek != Calendar.SUNDAY;
     }
 }
@@ -0,0 +1,66 @@
+package com.morristaedt.mirror.vision;
+
+import android.os.Debug;
+
+/**
+ * Counts the Java allocations made by the current thread between {@link #beginFrame()} and
+ * {@link #endFrame()}. Allocation counting slows the VM down, so it only runs when enabled,
+ * which should only be in debug builds.
+ */
+public class AllocationCounter {
+
+    private final boolean mEnabled;
+
+    private int mFrameStartCount;
+    private int mLastFrameAllocations;
+    private long mFrames;
+    private long mAllocations;
+
+    public AllocationCounter(boolean enabled) {
+        mEnabled = enabled;
+        if (mEnabled) {
+            Debug.startAllocCounting();
+        }
+    }
+
+    public void beginFrame() {
+        if (mEnabled) {
+            mFrameStartCount = Debug.getThreadAllocCount();
+        }
+    }
+
+    public void endFrame() {
+        if (mEnabled) {
+            mLastFrameAllocations = Debug.getThreadAllocCount() - mFrameStartCount;
+            mAllocations += mLastFrameAllocations;
+            mFrames++;
+        }
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public long getFrames() {
+        return mFrames;
+    }
+
+    public int getLastFrameAllocations() {
+        return mLastFrameAllocations;
+    }
+
+    public float getAllocationsPerFrame() {
+        return mFrames == 0 ? 0 : (float) mAllocations / mFrames;
+    }
+
+    public void stop() {
+        if (mEnabled) {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mEnabled ? String.format("%.1f allocations/frame over %d frames", getAllocationsPerFrame(), mFrames) : "allocation counting disabled";
+    }
+}
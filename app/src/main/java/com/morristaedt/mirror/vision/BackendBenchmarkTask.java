@@ -0,0 +1,119 @@
+package com.morristaedt.mirror.vision;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.morristaedt.mirror.vision.replay.BackendComparison;
+import com.morristaedt.mirror.vision.replay.FrameLabels;
+import com.morristaedt.mirror.vision.replay.ImageDirectorySource;
+
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Replays frames recorded with {@link FrameRecorder} through every face detector backend this
+ * device can run and logs how they compare. The Play Services detector only exists on a device,
+ * so this is where it gets measured against the cascades.
+ *
+ * If the recording has a labels.txt in the format {@link FrameLabels} reads, accuracy is logged
+ * as well.
+ */
+public class BackendBenchmarkTask extends AsyncTask<Void, Void, String> {
+
+    private static final String TAG = "BackendBenchmark";
+    private static final String LABELS_FILE = "labels.txt";
+
+    private final Context mContext;
+    private final File mFramesDirectory;
+    private final BackendComparison mComparison;
+
+    /**
+     * @param framesDirectory One recording, i.e. from {@link #findLatestRecording(File)}
+     */
+    public BackendBenchmarkTask(Context context, File framesDirectory, int detectionWidth, float faceFraction, int angle) {
+        mContext = context.getApplicationContext();
+        mFramesDirectory = framesDirectory;
+        mComparison = new BackendComparison(detectionWidth, faceFraction, angle);
+    }
+
+    /**
+     * @param recordingsDirectory Directory holding one directory per recording
+     * @return The most recent recording, or null if there is none
+     */
+    @Nullable
+    public static File findLatestRecording(File recordingsDirectory) {
+        File[] recordings = recordingsDirectory.listFiles();
+        File latest = null;
+        if (recordings != null) {
+            for (File recording : recordings) {
+                if (recording.isDirectory() && (latest == null || recording.lastModified() > latest.lastModified())) {
+                    latest = recording;
+                }
+            }
+        }
+        return latest;
+    }
+
+    @Override
+    protected String doInBackground(Void... params) {
+        Map<Integer, CascadeClassifier> classifiers = new HashMap<>();
+        for (FaceDetectorBackend backend : FaceDetectorBackend.values()) {
+            String name = backend.name().toLowerCase(Locale.US);
+            if (backend == FaceDetectorBackend.PLAY_SERVICES) {
+                PlayServicesFaceDetector detector = new PlayServicesFaceDetector(mContext);
+                if (detector.isOperational()) {
+                    mComparison.addBackend(name, detector);
+                } else {
+                    Log.w(TAG, "Play Services face detector not available, skipping it");
+                    detector.release();
+                }
+                continue;
+            }
+
+            int cascadeResId = CascadeProvider.findCascade(mContext, backend.getCascadeName());
+            CascadeClassifier classifier = cascadeResId != 0 ? CascadeProvider.obtainClassifier(mContext, cascadeResId) : null;
+            if (classifier != null) {
+                classifiers.put(cascadeResId, classifier);
+                mComparison.addBackend(name, new CascadeFaceDetector(classifier));
+            } else {
+                Log.w(TAG, "No " + backend.getCascadeName() + " in this build, skipping it");
+            }
+        }
+
+        FrameLabels labels = null;
+        File labelsFile = new File(mFramesDirectory, LABELS_FILE);
+        if (labelsFile.exists()) {
+            try {
+                labels = new FrameLabels(labelsFile);
+            } catch (IOException e) {
+                Log.e(TAG, "Error reading " + labelsFile, e);
+            }
+        }
+
+        try {
+            mComparison.run(new ImageDirectorySource(mFramesDirectory), labels);
+            return mComparison.getReport();
+        } finally {
+            mComparison.release();
+            // The mirror reuses them when it runs on more than one thread
+            for (Map.Entry<Integer, CascadeClassifier> classifier : classifiers.entrySet()) {
+                CascadeProvider.recycleClassifier(classifier.getKey(), classifier.getValue());
+            }
+        }
+    }
+
+    @Override
+    protected void onPostExecute(String report) {
+        Log.i(TAG, "Face detector backends on " + mFramesDirectory);
+        for (String line : report.split("\n")) {
+            Log.i(TAG, line);
+        }
+    }
+}
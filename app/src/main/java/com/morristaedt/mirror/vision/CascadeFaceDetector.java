@@ -0,0 +1,63 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+
+/**
+ * {@link FaceDetector} backed by an OpenCV cascade. Not thread safe, use one per thread.
+ */
+public class CascadeFaceDetector implements FaceDetector {
+
+    /**
+     * How much the search window grows between passes over the image
+     */
+    public static final double SCALE_FACTOR = 1.1;
+
+    private final CascadeClassifier mClassifier;
+    private final MatOfRect mFaces = new MatOfRect();
+    private final Size mMinSize = new Size();
+    private final Size mMaxSize = new Size();
+
+    public CascadeFaceDetector(CascadeClassifier classifier) {
+        mClassifier = classifier;
+    }
+
+    @Override
+    public Rect[] detect(Mat grayImage, int minFaceSize) {
+        return detect(grayImage, minFaceSize, 0);
+    }
+
+    /**
+     * Only search faces in a band of sizes
+     *
+     * @param maxFaceSize Largest face to look for, or 0 for no limit
+     */
+    public Rect[] detect(Mat grayImage, int minFaceSize, int maxFaceSize) {
+        mMinSize.width = minFaceSize;
+        mMinSize.height = minFaceSize;
+        mMaxSize.width = maxFaceSize;
+        mMaxSize.height = maxFaceSize;
+        mClassifier.detectMultiScale(grayImage, mFaces, SCALE_FACTOR, 2, 2, mMinSize, mMaxSize);
+        return mFaces.toArray();
+    }
+
+    /**
+     * Frees the detector's own buffers. The classifier belongs to whoever passed it in.
+     */
+    @Override
+    public void release() {
+        mFaces.release();
+    }
+
+    public CascadeClassifier getClassifier() {
+        return mClassifier;
+    }
+
+    @Override
+    public String toString() {
+        return "cascade";
+    }
+}
@@ -0,0 +1,210 @@
+package com.morristaedt.mirror.vision;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.morristaedt.mirror.BuildConfig;
+
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Loads cascade classifiers from raw resources once per process and shares them between
+ * activities.
+ *
+ * OpenCV can only load a cascade from a file, so the resource is copied to private storage, but
+ * only when the app version changed or the copy on disk no longer matches its checksum. Copying and
+ * parsing happen on a background thread. Only one activity runs the camera at a time, so sharing
+ * a classifier is safe. Extra instances for detecting on several threads are handed back when the
+ * camera stops and reused when it starts again.
+ *
+ * Call only after OpenCV has been initialised.
+ */
+public class CascadeProvider {
+
+    private static final String TAG = "CascadeProvider";
+
+    private static final String PREFS_CASCADES = "CascadePrefs";
+    private static final String VERSION_SUFFIX = "_version";
+    private static final String CRC_SUFFIX = "_crc";
+
+    public interface CascadeListener {
+        /**
+         * Called on the main thread
+         *
+         * @param classifier The loaded classifier, or null if it could not be loaded
+         */
+        void onCascadeLoaded(@Nullable CascadeClassifier classifier);
+    }
+
+    private static final Map<Integer, CascadeClassifier> sClassifiers = new HashMap<>();
+    private static final Map<Integer, List<CascadeListener>> sPending = new HashMap<>();
+    private static final Map<Integer, List<CascadeClassifier>> sSpares = new HashMap<>();
+
+    /**
+     * Get the classifier for a raw cascade resource. Must be called on the main thread.
+     *
+     * @param rawResId The cascade xml, i.e. R.raw.lbpcascade_frontalface
+     */
+    public static void getClassifier(Context context, final int rawResId, CascadeListener listener) {
+        CascadeClassifier classifier = sClassifiers.get(rawResId);
+        if (classifier != null) {
+            listener.onCascadeLoaded(classifier);
+            return;
+        }
+
+        List<CascadeListener> pending = sPending.get(rawResId);
+        if (pending != null) {
+            // Already loading, get in line
+            pending.add(listener);
+            return;
+        }
+
+        pending = new ArrayList<>();
+        pending.add(listener);
+        sPending.put(rawResId, pending);
+
+        final Context appContext = context.getApplicationContext();
+        new AsyncTask<Void, Void, CascadeClassifier>() {
+
+            @Override
+            protected CascadeClassifier doInBackground(Void... params) {
+                long start = System.currentTimeMillis();
+                try {
+                    File cascadeFile = copyIfChanged(appContext, rawResId);
+                    CascadeClassifier classifier = new CascadeClassifier(cascadeFile.getAbsolutePath());
+                    if (classifier.empty()) {
+                        Log.w(TAG, "Error loading classifier. It seems empty.");
+                        return null;
+                    }
+                    Log.v(TAG, "Loaded cascade classifier from " + cascadeFile.getAbsolutePath()
+                            + " in " + (System.currentTimeMillis() - start) + "ms");
+                    return classifier;
+                } catch (IOException e) {
+                    Log.e(TAG, "Error loading cascade", e);
+                    return null;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(CascadeClassifier classifier) {
+                if (classifier != null) {
+                    sClassifiers.put(rawResId, classifier);
+                }
+                for (CascadeListener listener : sPending.remove(rawResId)) {
+                    listener.onCascadeLoaded(classifier);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Look up a cascade by name, for cascades that aren't in every build
+     *
+     * @param name Raw resource name, i.e. "haarcascade_frontalface_default"
+     * @return The resource id, or 0 if this build doesn't have it
+     */
+    public static int findCascade(Context context, String name) {
+        return context.getResources().getIdentifier(name, "raw", context.getPackageName());
+    }
+
+    /**
+     * Get a separate instance of a cascade, i.e. for detecting on another thread at the same time
+     * as the shared one. Reuses an instance handed back with {@link #recycleClassifier(int, CascadeClassifier)}
+     * if there is one, otherwise copies and parses the cascade, so call it off the main thread.
+     *
+     * @return The classifier, or null if it could not be loaded
+     */
+    @Nullable
+    public static CascadeClassifier obtainClassifier(Context context, int rawResId) {
+        synchronized (sSpares) {
+            List<CascadeClassifier> spares = sSpares.get(rawResId);
+            if (spares != null && !spares.isEmpty()) {
+                return spares.remove(spares.size() - 1);
+            }
+        }
+
+        try {
+            CascadeClassifier classifier = new CascadeClassifier(copyIfChanged(context, rawResId).getAbsolutePath());
+            return classifier.empty() ? null : classifier;
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading cascade", e);
+            return null;
+        }
+    }
+
+    /**
+     * Hand back an instance from {@link #obtainClassifier(Context, int)} once nothing detects with
+     * it any more, so the next one obtained doesn't have to be parsed again
+     */
+    public static void recycleClassifier(int rawResId, CascadeClassifier classifier) {
+        synchronized (sSpares) {
+            List<CascadeClassifier> spares = sSpares.get(rawResId);
+            if (spares == null) {
+                spares = new ArrayList<>();
+                sSpares.put(rawResId, spares);
+            }
+            spares.add(classifier);
+        }
+    }
+
+    private static synchronized File copyIfChanged(Context context, int rawResId) throws IOException {
+        String name = context.getResources().getResourceEntryName(rawResId);
+        File cascadeFile = new File(context.getDir("c", Context.MODE_PRIVATE), name + ".xml");
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_CASCADES, Context.MODE_PRIVATE);
+
+        if (cascadeFile.exists()
+                && prefs.getInt(name + VERSION_SUFFIX, -1) == BuildConfig.VERSION_CODE
+                && prefs.getLong(name + CRC_SUFFIX, -1) == checksum(new FileInputStream(cascadeFile), null)) {
+            return cascadeFile;
+        }
+
+        // Copy the resource into a file so OpenCV can load it
+        long crc = checksum(context.getResources().openRawResource(rawResId), new FileOutputStream(cascadeFile));
+        prefs.edit()
+                .putInt(name + VERSION_SUFFIX, BuildConfig.VERSION_CODE)
+                .putLong(name + CRC_SUFFIX, crc)
+                .apply();
+        Log.v(TAG, "Copied cascade " + name);
+        return cascadeFile;
+    }
+
+    /**
+     * Read a stream to the end, optionally copying it, and close both streams
+     *
+     * @return The CRC32 of everything read
+     */
+    private static long checksum(InputStream is, @Nullable OutputStream os) throws IOException {
+        CRC32 crc = new CRC32();
+        try {
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = is.read(buffer)) != -1) {
+                crc.update(buffer, 0, bytesRead);
+                if (os != null) {
+                    os.write(buffer, 0, bytesRead);
+                }
+            }
+        } finally {
+            is.close();
+            if (os != null) {
+                os.close();
+            }
+        }
+        return crc.getValue();
+    }
+}
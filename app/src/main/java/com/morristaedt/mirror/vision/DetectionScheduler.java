@@ -0,0 +1,135 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Rect;
+
+/**
+ * Decides on which camera frames the face cascade actually runs.
+ *
+ * The cascade runs every N frames, or once a time budget has elapsed since the last run. N shrinks
+ * back to the minimum as soon as presence changes and grows while presence stays stable, so a
+ * person stepping up to the mirror is picked up quickly and an empty (or occupied) room costs little.
+ */
+public class DetectionScheduler {
+
+    private final int mMinInterval;
+    private final int mMaxInterval;
+    private final long mMaxDelayMillis;
+    private final int mStableRunsToBackOff;
+
+    private int mInterval;
+    private int mFramesSinceDetection;
+    private long mLastDetectionMillis;
+    private int mStableRuns;
+    private boolean mLastPresence;
+
+    private long mFramesDetected;
+    private long mFramesSkipped;
+
+    /**
+     * @param minInterval        Run the cascade at least every this many frames while presence is unclear
+     * @param maxInterval        Never wait more than this many frames once presence is stable
+     * @param maxDelayMillis     Run the cascade once this much time has passed, whatever the frame count
+     * @param stableRunsToBackOff How many identical results in a row before the interval is doubled
+     */
+    public DetectionScheduler(int minInterval, int maxInterval, long maxDelayMillis, int stableRunsToBackOff) {
+        mMinInterval = Math.max(1, minInterval);
+        mMaxInterval = Math.max(mMinInterval, maxInterval);
+        mMaxDelayMillis = maxDelayMillis;
+        mStableRunsToBackOff = Math.max(1, stableRunsToBackOff);
+        reset();
+    }
+
+    public DetectionScheduler() {
+        this(2, 15, 1000, 3);
+    }
+
+    /**
+     * Forget the cadence, so the next frame is always detected
+     */
+    public void reset() {
+        mInterval = mMinInterval;
+        mFramesSinceDetection = mInterval;
+        mLastDetectionMillis = 0;
+        mStableRuns = 0;
+        mLastPresence = false;
+    }
+
+    /**
+     * Something started moving in front of the camera, go back to the fastest cadence and detect
+     * on the next frame
+     */
+    public void onMotion() {
+        mInterval = mMinInterval;
+        mFramesSinceDetection = mInterval;
+        mStableRuns = 0;
+    }
+
+    /**
+     * Detect on the next frame without changing the cadence, i.e. when a tracked face was lost
+     */
+    public void requestDetection() {
+        mFramesSinceDetection = mInterval;
+    }
+
+    /**
+     * Call once per camera frame
+     *
+     * @param nowMillis Monotonic time of the frame, i.e. SystemClock.elapsedRealtime()
+     * @return true if the cascade should run on this frame
+     */
+    public boolean shouldDetect(long nowMillis) {
+        mFramesSinceDetection++;
+        if (mFramesSinceDetection >= mInterval || nowMillis - mLastDetectionMillis >= mMaxDelayMillis) {
+            mFramesDetected++;
+            return true;
+        }
+        mFramesSkipped++;
+        return false;
+    }
+
+    /**
+     * Call instead of {@link #shouldDetect(long)} on frames that arrive while the last cascade run
+     * is still going. They count as skipped, without moving the cadence on.
+     */
+    public void onBusy() {
+        mFramesSkipped++;
+    }
+
+    /**
+     * Report the result of a cascade run started after {@link #shouldDetect(long)} returned true
+     */
+    public void onDetected(Rect[] faces, long nowMillis) {
+        mFramesSinceDetection = 0;
+        mLastDetectionMillis = nowMillis;
+
+        boolean presence = faces != null && faces.length > 0;
+        if (presence != mLastPresence) {
+            // Presence is unclear, look more often
+            mLastPresence = presence;
+            mStableRuns = 0;
+            mInterval = mMinInterval;
+        } else if (++mStableRuns >= mStableRunsToBackOff) {
+            mStableRuns = 0;
+            mInterval = Math.min(mMaxInterval, mInterval * 2);
+        }
+    }
+
+    public int getInterval() {
+        return mInterval;
+    }
+
+    public long getFramesDetected() {
+        return mFramesDetected;
+    }
+
+    public long getFramesSkipped() {
+        return mFramesSkipped;
+    }
+
+    @Override
+    public String toString() {
+        long total = mFramesDetected + mFramesSkipped;
+        return "detected " + mFramesDetected + "/" + total + " frames, skipped " + mFramesSkipped
+                + ", interval " + mInterval;
+    }
+}
@@ -0,0 +1,226 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs face detection on its own thread so a slow cascade pass never stalls the camera callback.
+ *
+ * The caller hands over one frame at a time and only submits the next once the result of the last
+ * one is in, so frames never queue up behind a slow detection: the frames arriving meanwhile just
+ * aren't detected. Results are picked up again by the camera thread with {@link #pollResult()}, along
+ * with the image they were found in, and handed back with {@link #recycle(Result)}.
+ */
+public class DetectionWorker implements Runnable {
+
+    private static final String THREAD_NAME = "DetectionWorker";
+
+    // One frame waiting or being detected, one held by the last result
+    private static final int FRAME_BUFFERS = 2;
+
+    public static class Result {
+        /**
+         * Faces in full frame coordinates, or null if detection failed
+         */
+        public final Rect[] faces;
+        public final long frameTimeNanos;
+        /**
+         * The detection image the faces were found in, valid until the result is recycled
+         */
+        public final Mat image;
+
+        private final Frame mFrame;
+
+        Result(Rect[] faces, Frame frame) {
+            this.faces = faces;
+            this.frameTimeNanos = frame.timeNanos;
+            this.image = frame.image;
+            mFrame = frame;
+        }
+    }
+
+    private static class Frame {
+        final Mat image;
+        long timeNanos;
+        double scale;
+        int minFaceSize;
+
+        Frame(Mat image) {
+            this.image = image;
+        }
+    }
+
+    private final FaceDetector mDetector;
+
+    private final AtomicReference<Frame> mPending = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<Frame> mFreeFrames = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Result> mResult = new AtomicReference<>();
+
+    private volatile boolean mRunning;
+    private volatile Thread mThread;
+
+    private final AtomicLong mSubmitted = new AtomicLong();
+    private final AtomicLong mDetected = new AtomicLong();
+    private final AtomicLong mFailed = new AtomicLong();
+    private volatile Exception mLastError;
+    private final AtomicLong mLatencyNanosTotal = new AtomicLong();
+    private volatile long mLastLatencyNanos;
+
+    /**
+     * @param pool     Provides the frame buffers, which live as long as the pool
+     * @param detector Called on the worker thread only
+     */
+    public DetectionWorker(FramePool pool, FaceDetector detector) {
+        mDetector = detector;
+        for (int i = 0; i < FRAME_BUFFERS; i++) {
+            mFreeFrames.offer(new Frame(pool.newMat()));
+        }
+    }
+
+    public void start() {
+        mRunning = true;
+        mThread = new Thread(this, THREAD_NAME);
+        mThread.start();
+    }
+
+    /**
+     * Stop the worker and wait for a detection in progress to finish
+     */
+    public void stop() {
+        mRunning = false;
+        if (mThread != null) {
+            LockSupport.unpark(mThread);
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mThread = null;
+        }
+        Frame pending = mPending.getAndSet(null);
+        if (pending != null) {
+            mFreeFrames.offer(pending);
+        }
+        recycle(mResult.getAndSet(null));
+    }
+
+    /**
+     * Hand a frame to the worker, once the result of the last one was picked up. The image is copied,
+     * so the caller may reuse it straight away.
+     *
+     * @param image       Grayscale detection input
+     * @param scale       Factor mapping image coordinates back to full frame coordinates
+     * @param minFaceSize Smallest face to look for, in image pixels
+     * @param timeNanos   Capture time of the frame, from System.nanoTime()
+     * @return false if the last frame's result is still outstanding, so this one wasn't taken
+     */
+    public boolean submit(Mat image, double scale, int minFaceSize, long timeNanos) {
+        Frame frame = mFreeFrames.poll();
+        if (frame == null) {
+            // Never block the camera thread
+            return false;
+        }
+
+        image.copyTo(frame.image);
+        frame.scale = scale;
+        frame.minFaceSize = minFaceSize;
+        frame.timeNanos = timeNanos;
+        mSubmitted.incrementAndGet();
+
+        mPending.set(frame);
+        LockSupport.unpark(mThread);
+        return true;
+    }
+
+    /**
+     * @return The newest detection result not yet picked up, or null. Pass it to
+     * {@link #recycle(Result)} once done with its image.
+     */
+    public Result pollResult() {
+        return mResult.getAndSet(null);
+    }
+
+    /**
+     * Give a result's image back to the worker. The result can't be used afterwards.
+     *
+     * @param result A polled result, or null
+     */
+    public void recycle(Result result) {
+        if (result != null) {
+            mFreeFrames.offer(result.mFrame);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (mRunning) {
+            Frame frame = mPending.getAndSet(null);
+            if (frame == null) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            Result result;
+            try {
+                Rect[] faces = DetectionScaler.toFrame(mDetector.detect(frame.image, frame.minFaceSize), frame.scale);
+                long latency = System.nanoTime() - frame.timeNanos;
+                mLastLatencyNanos = latency;
+                mLatencyNanosTotal.addAndGet(latency);
+                mDetected.incrementAndGet();
+                result = new Result(faces, frame);
+            } catch (Exception e) {
+                // Shows in the stats, this runs off the device too where there's no Log
+                mFailed.incrementAndGet();
+                mLastError = e;
+                // Still report back, so the camera thread doesn't wait for this frame forever
+                result = new Result(null, frame);
+            }
+            // A result nobody picked up is superseded by the newer one
+            recycle(mResult.getAndSet(result));
+        }
+    }
+
+    public long getSubmitted() {
+        return mSubmitted.get();
+    }
+
+    public long getDetected() {
+        return mDetected.get();
+    }
+
+    public long getFailed() {
+        return mFailed.get();
+    }
+
+    /**
+     * @return Why the last failed detection failed, or null if none did
+     */
+    public Exception getLastError() {
+        return mLastError;
+    }
+
+    /**
+     * @return Average time from frame capture to detection result, in milliseconds
+     */
+    public float getAverageLatencyMillis() {
+        long detected = mDetected.get();
+        return detected == 0 ? 0 : mLatencyNanosTotal.get() / (detected * 1000000f);
+    }
+
+    public float getLastLatencyMillis() {
+        return mLastLatencyNanos / 1000000f;
+    }
+
+    @Override
+    public String toString() {
+        String stats = String.format("submitted %d, detected %d, latency avg %.1fms last %.1fms",
+                getSubmitted(), getDetected(), getAverageLatencyMillis(), getLastLatencyMillis());
+        Exception lastError = mLastError;
+        return lastError == null ? stats : stats + ", failed " + getFailed() + " (last: " + lastError + ")";
+    }
+}
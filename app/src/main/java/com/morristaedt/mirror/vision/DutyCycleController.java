@@ -0,0 +1,122 @@
+package com.morristaedt.mirror.vision;
+
+/**
+ * Drops the camera pipeline into a low rate idle mode when nobody has been around for a while.
+ *
+ * While active every frame is processed. After the absence period only one frame per sample
+ * interval is, which is still enough for the motion gate to notice someone walking in, at which
+ * point the pipeline goes straight back to full rate. Time is passed in, so the transitions can be
+ * driven by any frame source.
+ */
+public class DutyCycleController {
+
+    public enum State {
+        ACTIVE,
+        IDLE
+    }
+
+    public interface DutyCycleListener {
+        /**
+         * Called on the thread feeding frames whenever the state changes
+         */
+        void onDutyCycleChanged(State state);
+    }
+
+    private final long mIdleAfterMillis;
+    private final long mIdleSampleMillis;
+
+    private DutyCycleListener mListener;
+
+    private State mState = State.ACTIVE;
+    private long mStateSinceMillis = -1;
+    private long mLastActivityMillis;
+    private long mLastSampleMillis;
+
+    private long mActiveMillis;
+    private long mIdleMillis;
+    private long mSkippedFrames;
+
+    /**
+     * @param idleAfterMillis  How long without presence or motion before going idle
+     * @param idleSampleMillis Time between processed frames while idle
+     */
+    public DutyCycleController(long idleAfterMillis, long idleSampleMillis) {
+        mIdleAfterMillis = idleAfterMillis;
+        mIdleSampleMillis = idleSampleMillis;
+    }
+
+    public void setDutyCycleListener(DutyCycleListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Call for every frame before doing any work on it
+     *
+     * @return true if the frame should be processed
+     */
+    public boolean shouldProcess(long nowMillis) {
+        if (mStateSinceMillis < 0) {
+            mStateSinceMillis = nowMillis;
+            mLastActivityMillis = nowMillis;
+        }
+
+        if (mState == State.ACTIVE || nowMillis - mLastSampleMillis >= mIdleSampleMillis) {
+            mLastSampleMillis = nowMillis;
+            return true;
+        }
+        mSkippedFrames++;
+        return false;
+    }
+
+    /**
+     * Report the outcome of a processed frame
+     *
+     * @param activity true if someone is present or something moved
+     */
+    public void onFrameProcessed(boolean activity, long nowMillis) {
+        if (activity) {
+            mLastActivityMillis = nowMillis;
+            if (mState == State.IDLE) {
+                setState(State.ACTIVE, nowMillis);
+            }
+        } else if (mState == State.ACTIVE && nowMillis - mLastActivityMillis >= mIdleAfterMillis) {
+            setState(State.IDLE, nowMillis);
+        }
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * @return Total time spent in the given state, including the current stretch
+     */
+    public long getMillisIn(State state, long nowMillis) {
+        long current = mStateSinceMillis < 0 || state != mState ? 0 : nowMillis - mStateSinceMillis;
+        return (state == State.ACTIVE ? mActiveMillis : mIdleMillis) + current;
+    }
+
+    public long getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    public String toString(long nowMillis) {
+        return mState + ", active " + getMillisIn(State.ACTIVE, nowMillis) / 1000 + "s, idle "
+                + getMillisIn(State.IDLE, nowMillis) / 1000 + "s, " + mSkippedFrames + " frames skipped";
+    }
+
+    private void setState(State state, long nowMillis) {
+        if (mState == State.ACTIVE) {
+            mActiveMillis += nowMillis - mStateSinceMillis;
+        } else {
+            mIdleMillis += nowMillis - mStateSinceMillis;
+        }
+        mState = state;
+        mStateSinceMillis = nowMillis;
+        mLastSampleMillis = nowMillis;
+
+        if (mListener != null) {
+            mListener.onDutyCycleChanged(state);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * Finds faces in a single grayscale image
+ */
+public interface FaceDetector {
+
+    /**
+     * @param grayImage   Single channel image to search
+     * @param minFaceSize Smallest face to look for, in pixels of grayImage
+     * @return The faces found, in grayImage coordinates. Never null.
+     */
+    Rect[] detect(Mat grayImage, int minFaceSize);
+
+    /**
+     * Free any native resources, the detector can't be used afterwards
+     */
+    void release();
+}
@@ -0,0 +1,35 @@
+package com.morristaedt.mirror.vision;
+
+/**
+ * The face detectors the mirror can run on. Cascade backends name the raw resource they load.
+ */
+public enum FaceDetectorBackend {
+    LBP("lbpcascade_frontalface"),
+    HAAR("haarcascade_frontalface_default"),
+    PLAY_SERVICES(null);
+
+    private final String mCascadeName;
+
+    FaceDetectorBackend(String cascadeName) {
+        mCascadeName = cascadeName;
+    }
+
+    /**
+     * @return The raw resource name of the cascade, or null if the backend doesn't use one
+     */
+    public String getCascadeName() {
+        return mCascadeName;
+    }
+
+    /**
+     * @return The backend with the given name, or {@link #LBP} if there is none
+     */
+    public static FaceDetectorBackend fromName(String name) {
+        for (FaceDetectorBackend backend : values()) {
+            if (backend.name().equalsIgnoreCase(name)) {
+                return backend;
+            }
+        }
+        return LBP;
+    }
+}
@@ -0,0 +1,207 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Follows the largest detected face between cascade runs by template matching on the small
+ * detection image. Matching one face sized template over a window around its last position costs
+ * a fraction of a detectMultiScale pass, so faces can be reported on every frame.
+ *
+ * The template is taken from the very image the cascade found the face in, which with detection
+ * running on a worker is a few frames older than the ones tracked, and never updated, so the track
+ * can't drift away from what the cascade found. Once the best
+ * match falls below the confidence threshold the face counts as lost and the cascade has to find
+ * it again.
+ */
+public class FaceTracker {
+
+    private static final Rect[] NO_FACES = new Rect[0];
+
+    private final double mMargin;
+    private final double mMinConfidence;
+
+    private final Mat mTemplate = new Mat();
+    private final Mat mResult = new Mat();
+    private final Rect mWindow = new Rect();
+
+    private Rect mFace;
+    private int mImageWidth;
+    private int mImageHeight;
+
+    private long mFramesTracked;
+    private long mFramesLost;
+    private long mAnchors;
+    private double mLastConfidence;
+
+    /**
+     * @param margin        How far to search on each side of the last position, as a fraction of the face size
+     * @param minConfidence Normalised correlation, 0 to 1, below which the face is lost
+     */
+    public FaceTracker(double margin, double minConfidence) {
+        mMargin = margin;
+        mMinConfidence = minConfidence;
+    }
+
+    public FaceTracker() {
+        this(0.25, 0.6);
+    }
+
+    /**
+     * Start following the largest of the faces the cascade just found, or stop if there are none
+     *
+     * @param faces Detected faces in frame coordinates, not modified
+     * @param scale Factor from detection image to frame coordinates, see {@link DetectionScaler#getScale()}
+     * @param image Upright detection image the faces were found in, the template is copied out of it
+     */
+    public void anchor(Rect[] faces, double scale, Mat image) {
+        mAnchors++;
+        if (faces.length == 0) {
+            mFace = null;
+            return;
+        }
+
+        Rect largest = faces[0];
+        for (Rect face : faces) {
+            if (face.area() > largest.area()) {
+                largest = face;
+            }
+        }
+        mFace = new Rect((int) Math.round(largest.x / scale), (int) Math.round(largest.y / scale),
+                (int) Math.round(largest.width / scale), (int) Math.round(largest.height / scale));
+        takeTemplate(image);
+    }
+
+    /**
+     * Stop following the face, until the next anchor
+     */
+    public void reset() {
+        mFace = null;
+    }
+
+    /**
+     * @return true while there is a face to follow
+     */
+    public boolean isTracking() {
+        return mFace != null;
+    }
+
+    /**
+     * Find the face in the next detection image
+     *
+     * @param image Upright detection image, the same size the cascade ran on
+     * @param scale Factor from image to frame coordinates
+     * @return The face in frame coordinates, no faces if nothing is tracked, or null if the face was
+     * just lost and the cascade should look again
+     */
+    public Rect[] track(Mat image, double scale) {
+        if (mFace == null) {
+            return NO_FACES;
+        }
+
+        if (image.cols() != mImageWidth || image.rows() != mImageHeight) {
+            // The detection size changed, nothing to match the old template against
+            takeTemplate(image);
+            return mFace == null ? null : toFrame(scale);
+        }
+
+        Mat window = image.submat(window(mFace));
+        Core.MinMaxLocResult match;
+        try {
+            Imgproc.matchTemplate(window, mTemplate, mResult, Imgproc.TM_CCOEFF_NORMED);
+            match = Core.minMaxLoc(mResult);
+        } finally {
+            window.release();
+        }
+
+        mLastConfidence = match.maxVal;
+        if (match.maxVal < mMinConfidence) {
+            mFramesLost++;
+            mFace = null;
+            return null;
+        }
+
+        mFramesTracked++;
+        mFace.x = mWindow.x + (int) match.maxLoc.x;
+        mFace.y = mWindow.y + (int) match.maxLoc.y;
+        return toFrame(scale);
+    }
+
+    public void release() {
+        mTemplate.release();
+        mResult.release();
+        mFace = null;
+    }
+
+    public long getFramesTracked() {
+        return mFramesTracked;
+    }
+
+    public long getFramesLost() {
+        return mFramesLost;
+    }
+
+    public double getLastConfidence() {
+        return mLastConfidence;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tracked %d frames, lost %d times over %d anchors, last confidence %.2f",
+                mFramesTracked, mFramesLost, mAnchors, mLastConfidence);
+    }
+
+    private void takeTemplate(Mat image) {
+        mImageWidth = image.cols();
+        mImageHeight = image.rows();
+        if (!clamp(mFace)) {
+            mFace = null;
+            return;
+        }
+        Mat face = image.submat(mFace);
+        face.copyTo(mTemplate);
+        face.release();
+        mLastConfidence = 1.0;
+    }
+
+    private Rect[] toFrame(double scale) {
+        return new Rect[]{new Rect((int) Math.round(mFace.x * scale), (int) Math.round(mFace.y * scale),
+                (int) Math.round(mFace.width * scale), (int) Math.round(mFace.height * scale))};
+    }
+
+    /**
+     * Fit the rect inside the image
+     *
+     * @return false if nothing of it is left
+     */
+    private boolean clamp(Rect rect) {
+        int left = Math.max(0, rect.x);
+        int top = Math.max(0, rect.y);
+        int right = Math.min(mImageWidth, rect.x + rect.width);
+        int bottom = Math.min(mImageHeight, rect.y + rect.height);
+        rect.x = left;
+        rect.y = top;
+        rect.width = right - left;
+        rect.height = bottom - top;
+        return rect.width > 0 && rect.height > 0;
+    }
+
+    /**
+     * @return The region to search, always at least as large as the template
+     */
+    private Rect window(Rect face) {
+        int marginX = (int) Math.max(1, face.width * mMargin);
+        int marginY = (int) Math.max(1, face.height * mMargin);
+        int left = Math.max(0, face.x - marginX);
+        int top = Math.max(0, face.y - marginY);
+        int right = Math.min(mImageWidth, face.x + face.width + marginX);
+        int bottom = Math.min(mImageHeight, face.y + face.height + marginY);
+        mWindow.x = left;
+        mWindow.y = top;
+        mWindow.width = right - left;
+        mWindow.height = bottom - top;
+        return mWindow;
+    }
+}
@@ -0,0 +1,47 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the native Mats the camera frame path needs, so that steady state frames allocate nothing.
+ * Everything handed out stays valid until {@link #release()}.
+ */
+public class FramePool {
+
+    private static final AtomicInteger sLiveMats = new AtomicInteger();
+
+    private final List<Mat> mMats = new ArrayList<>();
+
+    /**
+     * @return A new empty Mat owned by the pool. OpenCV only reallocates its data when a frame
+     * of a different size or type is written into it.
+     */
+    public Mat newMat() {
+        Mat mat = new Mat();
+        mMats.add(mat);
+        sLiveMats.incrementAndGet();
+        return mat;
+    }
+
+    /**
+     * Free every native Mat handed out by this pool
+     */
+    public void release() {
+        for (Mat mat : mMats) {
+            mat.release();
+        }
+        sLiveMats.addAndGet(-mMats.size());
+        mMats.clear();
+    }
+
+    /**
+     * @return How many Mats created through any pool have not been released yet
+     */
+    public static int getLiveMats() {
+        return sLiveMats.get();
+    }
+}
@@ -0,0 +1,114 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dumps grayscale camera frames to numbered PNGs, for replaying through the replay module's
+ * ReplayBenchmark off the device.
+ *
+ * Encoding a PNG costs far more than detection, so only every Nth frame is kept, recording stops
+ * after a fixed number of frames, and the encoding happens on a writer thread. The camera thread
+ * only copies the frame. When the writer falls behind, frames are dropped rather than queued.
+ * Frames are written as the camera delivers them, unrotated.
+ */
+public class FrameRecorder {
+
+    // Frames copied and waiting for the writer, beyond that frames are dropped
+    private static final int BUFFERS = 4;
+
+    private final File mDirectory;
+    private final int mEveryNthFrame;
+    private final int mMaxFrames;
+
+    private final ConcurrentLinkedQueue<Mat> mFreeBuffers = new ConcurrentLinkedQueue<>();
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+
+    private long mFrames;
+    private int mQueued;
+    private int mDropped;
+    private final AtomicInteger mWritten = new AtomicInteger();
+
+    /**
+     * @param directory     Where to write the frames, created if needed
+     * @param everyNthFrame Keep one frame out of this many
+     * @param maxFrames     Stop once this many frames are written
+     */
+    public FrameRecorder(File directory, int everyNthFrame, int maxFrames) {
+        mDirectory = directory;
+        mEveryNthFrame = Math.max(1, everyNthFrame);
+        mMaxFrames = maxFrames;
+        mDirectory.mkdirs();
+        for (int i = 0; i < BUFFERS; i++) {
+            mFreeBuffers.offer(new Mat());
+        }
+    }
+
+    /**
+     * Call for every camera frame. Frames to keep are copied and written in the background.
+     *
+     * @return true if the frame was queued for writing
+     */
+    public boolean record(Mat grayFrame) {
+        if (mQueued >= mMaxFrames || mFrames++ % mEveryNthFrame != 0) {
+            return false;
+        }
+
+        final Mat buffer = mFreeBuffers.poll();
+        if (buffer == null) {
+            // Never hold up the camera thread for a recording
+            mDropped++;
+            return false;
+        }
+        grayFrame.copyTo(buffer);
+
+        final File file = new File(mDirectory, String.format("frame_%05d.png", mQueued++));
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (Imgcodecs.imwrite(file.getPath(), buffer)) {
+                        mWritten.incrementAndGet();
+                    }
+                } finally {
+                    mFreeBuffers.offer(buffer);
+                }
+            }
+        });
+        return true;
+    }
+
+    public boolean isFull() {
+        return mQueued >= mMaxFrames;
+    }
+
+    /**
+     * Finish writing the frames already queued in the background, then free the buffers.
+     * Nothing is recorded afterwards.
+     */
+    public void close() {
+        mQueued = mMaxFrames;
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                Mat buffer;
+                while ((buffer = mFreeBuffers.poll()) != null) {
+                    buffer.release();
+                }
+            }
+        });
+        mWriter.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "recorded " + mWritten.get() + "/" + mMaxFrames + " frames to " + mDirectory
+                + ", one in " + mEveryNthFrame + ", " + mDropped + " dropped while writing";
+    }
+}
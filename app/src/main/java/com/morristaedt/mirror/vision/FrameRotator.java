@@ -0,0 +1,86 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * Rotates frames by right angles with transpose and flip, which is an exact pixel shuffle instead
+ * of the bilinear interpolation warpAffine does. Rotating by 90 degrees also swaps width and height,
+ * so nothing is clipped off a non-square frame.
+ */
+public class FrameRotator {
+
+    private FrameRotator() {
+    }
+
+    /**
+     * @param src   Image to rotate
+     * @param dst   Buffer for the rotated image, must not be src
+     * @param angle Counter-clockwise rotation in degrees, like Imgproc.getRotationMatrix2D. Rounded
+     *              to the nearest multiple of 90.
+     * @return The rotated image: dst, or src itself when no rotation is needed
+     */
+    public static Mat rotate(Mat src, Mat dst, double angle) {
+        switch (quarterTurns(angle)) {
+            default:
+            case 0:
+                return src;
+            case 1:
+                Core.transpose(src, dst);
+                Core.flip(dst, dst, 0);
+                return dst;
+            case 2:
+                Core.flip(src, dst, -1);
+                return dst;
+            case 3:
+                Core.transpose(src, dst);
+                Core.flip(dst, dst, 1);
+                return dst;
+        }
+    }
+
+    /**
+     * Maps rects found on a rotated image back onto the unrotated image, in place. Cheaper than
+     * rotating a full frame just to draw on it.
+     *
+     * @param angle     The angle the image was rotated by with {@link #rotate(Mat, Mat, double)}
+     * @param srcWidth  Width of the unrotated image
+     * @param srcHeight Height of the unrotated image
+     */
+    public static Rect[] toSource(Rect[] rects, double angle, int srcWidth, int srcHeight) {
+        int turns = quarterTurns(angle);
+        for (Rect rect : rects) {
+            int x = rect.x;
+            int y = rect.y;
+            int width = rect.width;
+            int height = rect.height;
+            switch (turns) {
+                default:
+                case 0:
+                    break;
+                case 1:
+                    rect.x = srcWidth - y - height;
+                    rect.y = x;
+                    rect.width = height;
+                    rect.height = width;
+                    break;
+                case 2:
+                    rect.x = srcWidth - x - width;
+                    rect.y = srcHeight - y - height;
+                    break;
+                case 3:
+                    rect.x = y;
+                    rect.y = srcHeight - x - width;
+                    rect.width = height;
+                    rect.height = width;
+                    break;
+            }
+        }
+        return rects;
+    }
+
+    private static int quarterTurns(double angle) {
+        return ((int) Math.round(angle / 90.0) % 4 + 4) % 4;
+    }
+}
@@ -0,0 +1,134 @@
+package com.morristaedt.mirror.vision;
+
+/**
+ * Where the camera thread's time goes: a {@link LatencyHistogram} per {@link VisionPipeline}
+ * stage, plus the parts of a frame outside the pipeline, and the frame rates over the last second.
+ *
+ * Everything is recorded on the camera thread without allocating. Only {@link #toString()}
+ * allocates, so call it for logging or an overlay, not every frame.
+ */
+public class FrameStats implements VisionPipeline.StageTimingListener {
+
+    private static final long FPS_WINDOW_NANOS = 1000000000L;
+
+    private final LatencyHistogram[] mStages = new LatencyHistogram[VisionPipeline.Stage.values().length];
+    private final LatencyHistogram mConvert = new LatencyHistogram();
+    private final LatencyHistogram mListener = new LatencyHistogram();
+    private final LatencyHistogram mFrame = new LatencyHistogram();
+
+    private long mWindowStartNanos;
+    private int mWindowFrames;
+    private int mWindowProcessed;
+    private float mCameraFps;
+    private float mProcessedFps;
+
+    public FrameStats() {
+        for (int i = 0; i < mStages.length; i++) {
+            mStages[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public void onStageTimed(VisionPipeline.Stage stage, long nanos) {
+        mStages[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Time spent converting the frame for display
+     */
+    public void recordConvert(long nanos) {
+        mConvert.record(nanos);
+    }
+
+    /**
+     * Time spent handing the results to listeners
+     */
+    public void recordListener(long nanos) {
+        mListener.record(nanos);
+    }
+
+    /**
+     * Call once for every frame the camera delivers
+     *
+     * @param nowNanos   System.nanoTime() at the end of the frame
+     * @param frameNanos Total time spent on the frame
+     * @param processed  false if the frame was skipped without looking at it
+     */
+    public void recordFrame(long nowNanos, long frameNanos, boolean processed) {
+        if (processed) {
+            mFrame.record(frameNanos);
+            mWindowProcessed++;
+        }
+        mWindowFrames++;
+
+        if (mWindowStartNanos == 0) {
+            // The first frame only opens the window, frames are counted against the time since
+            mWindowStartNanos = nowNanos;
+            mWindowFrames = 0;
+            mWindowProcessed = 0;
+        } else if (nowNanos - mWindowStartNanos >= FPS_WINDOW_NANOS) {
+            float seconds = (nowNanos - mWindowStartNanos) / 1e9f;
+            mCameraFps = mWindowFrames / seconds;
+            mProcessedFps = mWindowProcessed / seconds;
+            mWindowStartNanos = nowNanos;
+            mWindowFrames = 0;
+            mWindowProcessed = 0;
+        }
+    }
+
+    public LatencyHistogram getStage(VisionPipeline.Stage stage) {
+        return mStages[stage.ordinal()];
+    }
+
+    public LatencyHistogram getFrame() {
+        return mFrame;
+    }
+
+    /**
+     * @return Frames per second the camera delivered over the last second
+     */
+    public float getCameraFps() {
+        return mCameraFps;
+    }
+
+    /**
+     * @return Frames per second that went through the pipeline over the last second
+     */
+    public float getProcessedFps() {
+        return mProcessedFps;
+    }
+
+    /**
+     * Start the histograms over, i.e. after logging them
+     */
+    public void reset() {
+        for (LatencyHistogram stage : mStages) {
+            stage.reset();
+        }
+        mConvert.reset();
+        mListener.reset();
+        mFrame.reset();
+    }
+
+    /**
+     * @return One line per stage that ran, for logging or an on screen overlay
+     */
+    @Override
+    public String toString() {
+        StringBuilder stats = new StringBuilder(String.format("%.1f fps camera, %.1f fps processed\n",
+                mCameraFps, mProcessedFps));
+        for (VisionPipeline.Stage stage : VisionPipeline.Stage.values()) {
+            append(stats, stage.name().toLowerCase(), mStages[stage.ordinal()]);
+        }
+        append(stats, "convert", mConvert);
+        append(stats, "listener", mListener);
+        append(stats, "frame", mFrame);
+        return stats.toString().trim();
+    }
+
+    private static void append(StringBuilder stats, String name, LatencyHistogram histogram) {
+        if (histogram.getCount() > 0) {
+            stats.append(name).append(' ').append(histogram).append('\n');
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.morristaedt.mirror.vision;
+
+/**
+ * Measures how long the camera thread spends on each frame
+ */
+public class FrameTimer {
+
+    private long mStartNanos;
+    private long mLastNanos;
+    private long mTotalNanos;
+    private long mFrames;
+
+    public void start() {
+        mStartNanos = System.nanoTime();
+    }
+
+    public void stop() {
+        mLastNanos = System.nanoTime() - mStartNanos;
+        mTotalNanos += mLastNanos;
+        mFrames++;
+    }
+
+    public long getFrames() {
+        return mFrames;
+    }
+
+    public float getLastMillis() {
+        return mLastNanos / 1000000f;
+    }
+
+    public float getAverageMillis() {
+        return mFrames == 0 ? 0 : mTotalNanos / (mFrames * 1000000f);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.2fms/frame over %d frames", getAverageMillis(), mFrames);
+    }
+}
@@ -0,0 +1,10 @@
+package com.morristaedt.mirror.vision;
+
+/**
+ * Hand gestures made beside the face. Directions are as seen by the person at the mirror.
+ */
+public enum Gesture {
+    SWIPE_LEFT,
+    SWIPE_RIGHT,
+    WAVE
+}
@@ -0,0 +1,79 @@
+package com.morristaedt.mirror.vision;
+
+/**
+ * Latency histogram with fixed, geometrically growing buckets from 10us to a few seconds.
+ * Recording is an array increment, so it can run on every frame without allocating. Percentiles
+ * are reported as the upper edge of their bucket, so they are at most 25% high.
+ */
+public class LatencyHistogram {
+
+    private static final double FIRST_BUCKET_NANOS = 10000;
+    private static final double BUCKET_GROWTH = 1.25;
+    private static final int BUCKETS = 64;
+
+    private static final double LOG_GROWTH = Math.log(BUCKET_GROWTH);
+
+    private final long[] mCounts = new long[BUCKETS];
+    private long mCount;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    public void record(long nanos) {
+        int bucket = 0;
+        if (nanos > FIRST_BUCKET_NANOS) {
+            bucket = Math.min(BUCKETS - 1, (int) Math.ceil(Math.log(nanos / FIRST_BUCKET_NANOS) / LOG_GROWTH));
+        }
+        mCounts[bucket]++;
+        mCount++;
+        mTotalNanos += nanos;
+        mMaxNanos = Math.max(mMaxNanos, nanos);
+    }
+
+    /**
+     * @param fraction 0.5 for the median, 0.99 for the 99th percentile
+     * @return The latency that fraction of the recorded ones don't exceed, in milliseconds
+     */
+    public float getPercentileMillis(double fraction) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * mCount);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += mCounts[bucket];
+            if (seen >= rank) {
+                // The last bucket is open ended
+                double upperNanos = bucket == BUCKETS - 1 ? mMaxNanos : FIRST_BUCKET_NANOS * Math.pow(BUCKET_GROWTH, bucket);
+                return (float) (Math.min(upperNanos, mMaxNanos) / 1e6);
+            }
+        }
+        return mMaxNanos / 1e6f;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public float getAverageMillis() {
+        return mCount == 0 ? 0 : mTotalNanos / (mCount * 1e6f);
+    }
+
+    public float getMaxMillis() {
+        return mMaxNanos / 1e6f;
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            mCounts[bucket] = 0;
+        }
+        mCount = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("p50 %.2f p95 %.2f p99 %.2f ms", getPercentileMillis(0.5),
+                getPercentileMillis(0.95), getPercentileMillis(0.99));
+    }
+}
@@ -0,0 +1,64 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * Measures what another {@link FaceDetector} costs per frame, so backends can be compared on the
+ * device they run on
+ */
+public class MeteredFaceDetector implements FaceDetector {
+
+    private final String mName;
+    private final FaceDetector mDetector;
+
+    private volatile long mDetections;
+    private volatile long mTotalNanos;
+    private volatile long mLastNanos;
+    private volatile long mMaxNanos;
+
+    public MeteredFaceDetector(String name, FaceDetector detector) {
+        mName = name;
+        mDetector = detector;
+    }
+
+    @Override
+    public Rect[] detect(Mat grayImage, int minFaceSize) {
+        long start = System.nanoTime();
+        Rect[] faces = mDetector.detect(grayImage, minFaceSize);
+        long elapsed = System.nanoTime() - start;
+
+        mLastNanos = elapsed;
+        mMaxNanos = Math.max(mMaxNanos, elapsed);
+        mTotalNanos += elapsed;
+        mDetections++;
+        return faces;
+    }
+
+    @Override
+    public void release() {
+        mDetector.release();
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public FaceDetector getDetector() {
+        return mDetector;
+    }
+
+    public float getAverageMillis() {
+        return mDetections == 0 ? 0 : mTotalNanos / (mDetections * 1000000f);
+    }
+
+    public float getLastMillis() {
+        return mLastNanos / 1000000f;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %.2fms/detection (max %.2fms) over %d detections, %s",
+                mName, getAverageMillis(), mMaxNanos / 1000000f, mDetections, mDetector);
+    }
+}
@@ -0,0 +1,121 @@
+package com.morristaedt.mirror.vision;
+
+import android.content.Context;
+import android.hardware.Camera;
+import android.util.AttributeSet;
+import android.util.Log;
+
+import org.opencv.android.JavaCameraView;
+import org.opencv.core.Size;
+
+import java.util.List;
+
+/**
+ * Camera view that opens the camera at the resolution face detection needs, rather than the
+ * largest one that fits the view.
+ *
+ * In headless mode frames are handed to the listener but never drawn, which saves converting
+ * every frame to a bitmap and drawing it on the camera thread. The preview is behind the mirror
+ * glass anyway.
+ */
+public class MirrorCameraView extends JavaCameraView {
+
+    private static final String TAG = "MirrorCameraView";
+
+    private PreviewSizePolicy mPreviewSizePolicy;
+    private int[] mDefaultFpsRange;
+    private boolean mHeadless;
+
+    // The base class keeps its listener private, headless mode needs to call it directly
+    private CvCameraViewListener2 mListener;
+
+    public MirrorCameraView(Context context, int cameraId) {
+        super(context, cameraId);
+    }
+
+    public MirrorCameraView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * @param policy Picks the preview size the next time the camera opens, null for the default
+     */
+    public void setPreviewSizePolicy(PreviewSizePolicy policy) {
+        mPreviewSizePolicy = policy;
+    }
+
+    /**
+     * @param headless true to analyse frames without drawing them, false to show the preview
+     */
+    public void setHeadless(boolean headless) {
+        mHeadless = headless;
+    }
+
+    public boolean isHeadless() {
+        return mHeadless;
+    }
+
+    /**
+     * Headless mode only works with this kind of listener
+     */
+    @Override
+    public void setCvCameraViewListener(CvCameraViewListener2 listener) {
+        super.setCvCameraViewListener(listener);
+        mListener = listener;
+    }
+
+    @Override
+    protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
+        if (!mHeadless) {
+            super.deliverAndDrawFrame(frame);
+            return;
+        }
+
+        // The returned image is only ever drawn, so it's ignored
+        if (mListener != null) {
+            mListener.onCameraFrame(frame);
+        }
+    }
+
+    /**
+     * Switch the open camera between its lowest supported preview frame rate and its default one.
+     * Call on the UI thread.
+     */
+    public void setLowFrameRate(boolean low) {
+        if (mCamera == null) {
+            return;
+        }
+
+        try {
+            Camera.Parameters params = mCamera.getParameters();
+            List<int[]> ranges = params.getSupportedPreviewFpsRange();
+            if (ranges == null || ranges.isEmpty()) {
+                return;
+            }
+            if (mDefaultFpsRange == null) {
+                mDefaultFpsRange = new int[2];
+                params.getPreviewFpsRange(mDefaultFpsRange);
+            }
+
+            // Supported ranges are sorted from slowest to fastest
+            int[] range = low ? ranges.get(0) : mDefaultFpsRange;
+            params.setPreviewFpsRange(range[0], range[1]);
+            mCamera.setParameters(params);
+            Log.v(TAG, "Preview frame rate " + range[0] / 1000 + "-" + range[1] / 1000 + "fps");
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not change the preview frame rate", e);
+        }
+    }
+
+    @Override
+    protected Size calculateCameraFrameSize(List<?> supportedSizes, ListItemAccessor accessor, int surfaceWidth, int surfaceHeight) {
+        if (mPreviewSizePolicy == null) {
+            return super.calculateCameraFrameSize(supportedSizes, accessor, surfaceWidth, surfaceHeight);
+        }
+
+        Size size = mPreviewSizePolicy.choose(supportedSizes, accessor);
+        Log.v(TAG, "Preview size " + (int) size.width + "x" + (int) size.height
+                + " for a minimum frame height of " + mPreviewSizePolicy.getMinFrameHeight());
+        return size;
+    }
+}
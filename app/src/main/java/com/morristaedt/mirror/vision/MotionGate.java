@@ -0,0 +1,110 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Cheap motion check that runs ahead of face detection. Each frame is shrunk to a tiny thumbnail
+ * and compared against a running average of the previous thumbnails. While nobody is in the room
+ * and nothing moves there is no point running the cascade at all.
+ */
+public class MotionGate {
+
+    private static final int THUMBNAIL_WIDTH = 40;
+
+    // How far a thumbnail pixel has to move away from the background to count as changed
+    private static final double PIXEL_THRESHOLD = 25;
+
+    private final double mThreshold;
+    private final double mLearningRate;
+
+    private final Size mThumbnailSize = new Size();
+    private final Mat mThumbnail = new Mat();
+    private final Mat mThumbnailFloat = new Mat();
+    private final Mat mBackground = new Mat();
+    private final Mat mDifference = new Mat();
+
+    private boolean mHasBackground;
+    private double mLastMotion;
+
+    private long mMotionFrames;
+    private long mStaticFrames;
+
+    /**
+     * @param threshold    Fraction of thumbnail pixels that must change to count as motion, 0 to 1
+     * @param learningRate How quickly the background absorbs changes, 0 to 1 per frame
+     */
+    public MotionGate(double threshold, double learningRate) {
+        mThreshold = threshold;
+        mLearningRate = learningRate;
+    }
+
+    /**
+     * Compare a frame against the background and fold it into the background
+     *
+     * @param grayFrame Full size single channel frame
+     * @return true if the frame differs enough from the background to count as motion
+     */
+    public boolean update(Mat grayFrame) {
+        mThumbnailSize.width = THUMBNAIL_WIDTH;
+        mThumbnailSize.height = Math.max(1, Math.round((double) grayFrame.rows() * THUMBNAIL_WIDTH / grayFrame.cols()));
+        Imgproc.resize(grayFrame, mThumbnail, mThumbnailSize, 0, 0, Imgproc.INTER_AREA);
+        mThumbnail.convertTo(mThumbnailFloat, CvType.CV_32F);
+
+        if (!mHasBackground || mBackground.cols() != mThumbnail.cols() || mBackground.rows() != mThumbnail.rows()) {
+            // Nothing to compare against yet, so let detection decide
+            mThumbnailFloat.copyTo(mBackground);
+            mHasBackground = true;
+            mLastMotion = 1.0;
+            mMotionFrames++;
+            return true;
+        }
+
+        Core.absdiff(mThumbnailFloat, mBackground, mDifference);
+        Imgproc.threshold(mDifference, mDifference, PIXEL_THRESHOLD, 1.0, Imgproc.THRESH_BINARY);
+        mLastMotion = (double) Core.countNonZero(mDifference) / (mDifference.rows() * mDifference.cols());
+
+        Imgproc.accumulateWeighted(mThumbnailFloat, mBackground, mLearningRate);
+
+        if (mLastMotion >= mThreshold) {
+            mMotionFrames++;
+            return true;
+        }
+        mStaticFrames++;
+        return false;
+    }
+
+    /**
+     * @return Fraction of thumbnail pixels that changed in the last frame
+     */
+    public double getLastMotion() {
+        return mLastMotion;
+    }
+
+    public long getMotionFrames() {
+        return mMotionFrames;
+    }
+
+    public long getStaticFrames() {
+        return mStaticFrames;
+    }
+
+    public void reset() {
+        mHasBackground = false;
+    }
+
+    public void release() {
+        mThumbnail.release();
+        mThumbnailFloat.release();
+        mBackground.release();
+        mDifference.release();
+    }
+
+    @Override
+    public String toString() {
+        return "motion in " + mMotionFrames + " frames, static " + mStaticFrames;
+    }
+}
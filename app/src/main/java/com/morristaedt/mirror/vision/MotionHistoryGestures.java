@@ -0,0 +1,241 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
+
+/**
+ * Recognises swipes and waves from a motion history image of the band of the frame at face
+ * height. The band is shrunk to a tiny fixed size thumbnail, so this costs a small fraction of a
+ * cascade run and can run on every frame someone is at the mirror.
+ *
+ * Pixels that changed since the last frame are set to 1 in the motion history and everything else
+ * fades out over {@link #HISTORY_MILLIS}, so the weighted centroid of the history follows the
+ * hand. The face itself is masked out, so nodding or turning doesn't count. A centroid that moves
+ * far enough in one direction is a swipe, one that turns back repeatedly is a wave.
+ *
+ * Assumes a front facing camera, whose upright image shows the person the way others see them.
+ */
+public class MotionHistoryGestures {
+
+    private static final int THUMBNAIL_WIDTH = 64;
+    private static final int THUMBNAIL_HEIGHT = 16;
+
+    // How far a thumbnail pixel has to change between frames to count as motion
+    private static final double PIXEL_THRESHOLD = 20;
+
+    private static final long HISTORY_MILLIS = 500;
+
+    // Mean motion history below which there is too little motion to follow
+    private static final double MIN_ENERGY = 0.02;
+
+    // Distances in face widths, so they don't depend on how far away the person stands
+    private static final double SWIPE_DISTANCE = 1.5;
+    private static final long SWIPE_MILLIS = 800;
+    private static final double WAVE_AMPLITUDE = 0.4;
+    private static final int WAVE_REVERSALS = 3;
+    private static final long WAVE_MILLIS = 1500;
+
+    private static final long COOLDOWN_MILLIS = 1000;
+
+    private static final int MAX_SAMPLES = 64;
+
+    private final Rect mBand = new Rect();
+    private final Size mThumbnailSize = new Size(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+    private final Mat mThumbnail = new Mat();
+    private final Mat mPrevious = new Mat();
+    private final Mat mMotion = new Mat();
+    private final Mat mHistory = new Mat();
+    private final Scalar mZero = new Scalar(0);
+    private final Scalar mOne = new Scalar(1);
+    private final Scalar mDecay = new Scalar(0);
+
+    private boolean mHasPrevious;
+    private long mLastFrameMillis;
+    private long mCooldownUntilMillis;
+
+    // Centroid positions relative to the face centre, in face widths, oldest first
+    private final double[] mSampleX = new double[MAX_SAMPLES];
+    private final long[] mSampleMillis = new long[MAX_SAMPLES];
+    private int mSamples;
+
+    private long mFrames;
+    private long mTotalNanos;
+    private long mGestures;
+
+    /**
+     * Look at the next frame
+     *
+     * @param upright   Upright grayscale image, i.e. the detection image
+     * @param face      The person's face in the same image
+     * @param nowMillis Monotonic time of the frame
+     * @return The gesture that just completed, or null
+     */
+    public Gesture update(Mat upright, Rect face, long nowMillis) {
+        long start = System.nanoTime();
+        try {
+            return detect(upright, face, nowMillis);
+        } finally {
+            mTotalNanos += System.nanoTime() - start;
+            mFrames++;
+        }
+    }
+
+    /**
+     * Forget all motion, i.e. when the person leaves
+     */
+    public void reset() {
+        mHasPrevious = false;
+        mSamples = 0;
+    }
+
+    public void release() {
+        mThumbnail.release();
+        mPrevious.release();
+        mMotion.release();
+        mHistory.release();
+    }
+
+    /**
+     * @return What looking for gestures adds to each frame it runs on
+     */
+    public float getAverageMillis() {
+        return mFrames == 0 ? 0 : mTotalNanos / (mFrames * 1000000f);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("gestures %.2fms/frame over %d frames, %d recognised", getAverageMillis(), mFrames, mGestures);
+    }
+
+    private Gesture detect(Mat upright, Rect face, long nowMillis) {
+        // A band one and a half faces high, across the whole image, where a raised hand would be
+        mBand.x = 0;
+        mBand.width = upright.cols();
+        mBand.y = Math.max(0, face.y - face.height / 4);
+        mBand.height = Math.min(upright.rows(), face.y + face.height + face.height / 4) - mBand.y;
+        if (mBand.height <= 0 || face.width <= 0) {
+            return null;
+        }
+
+        Mat band = upright.submat(mBand);
+        Imgproc.resize(band, mThumbnail, mThumbnailSize, 0, 0, Imgproc.INTER_AREA);
+        band.release();
+
+        if (!mHasPrevious) {
+            mThumbnail.copyTo(mPrevious);
+            mHistory.create(THUMBNAIL_HEIGHT, THUMBNAIL_WIDTH, CvType.CV_32F);
+            mHistory.setTo(mZero);
+            mHasPrevious = true;
+            mLastFrameMillis = nowMillis;
+            return null;
+        }
+
+        Core.absdiff(mThumbnail, mPrevious, mMotion);
+        Imgproc.threshold(mMotion, mMotion, PIXEL_THRESHOLD, 255, Imgproc.THRESH_BINARY);
+        mThumbnail.copyTo(mPrevious);
+
+        // Leave the head and a margin around it out, it moves too
+        double toThumbnail = (double) THUMBNAIL_WIDTH / upright.cols();
+        int faceLeft = Math.max(0, (int) ((face.x - face.width * 0.2) * toThumbnail));
+        int faceRight = Math.min(THUMBNAIL_WIDTH, (int) Math.ceil((face.x + face.width * 1.2) * toThumbnail));
+        if (faceRight > faceLeft) {
+            Mat head = mMotion.colRange(faceLeft, faceRight);
+            head.setTo(mZero);
+            head.release();
+        }
+
+        // Fade the history by the time since the last frame, then stamp the new motion in
+        mDecay.val[0] = Math.min(1.0, (double) (nowMillis - mLastFrameMillis) / HISTORY_MILLIS);
+        mLastFrameMillis = nowMillis;
+        Core.subtract(mHistory, mDecay, mHistory);
+        Core.max(mHistory, mZero, mHistory);
+        mHistory.setTo(mOne, mMotion);
+
+        if (nowMillis < mCooldownUntilMillis) {
+            return null;
+        }
+
+        Moments moments = Imgproc.moments(mHistory, false);
+        double energy = moments.get_m00() / (THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT);
+        if (energy < MIN_ENERGY) {
+            return null;
+        }
+
+        double faceCentre = (face.x + face.width / 2.0) * toThumbnail;
+        double faceWidth = face.width * toThumbnail;
+        addSample((moments.get_m10() / moments.get_m00() - faceCentre) / faceWidth, nowMillis);
+
+        Gesture gesture = classify(nowMillis);
+        if (gesture != null) {
+            mGestures++;
+            mSamples = 0;
+            mCooldownUntilMillis = nowMillis + COOLDOWN_MILLIS;
+        }
+        return gesture;
+    }
+
+    private void addSample(double x, long nowMillis) {
+        if (mSamples == MAX_SAMPLES) {
+            System.arraycopy(mSampleX, 1, mSampleX, 0, MAX_SAMPLES - 1);
+            System.arraycopy(mSampleMillis, 1, mSampleMillis, 0, MAX_SAMPLES - 1);
+            mSamples--;
+        }
+        mSampleX[mSamples] = x;
+        mSampleMillis[mSamples] = nowMillis;
+        mSamples++;
+    }
+
+    private Gesture classify(long nowMillis) {
+        if (isWave(nowMillis)) {
+            return Gesture.WAVE;
+        }
+
+        // Swipe: far enough in one direction, recently, without turning back much
+        double last = mSampleX[mSamples - 1];
+        double travelled = 0;
+        for (int i = mSamples - 1; i > 0 && nowMillis - mSampleMillis[i - 1] <= SWIPE_MILLIS; i--) {
+            travelled += Math.abs(mSampleX[i] - mSampleX[i - 1]);
+            double distance = last - mSampleX[i - 1];
+            if (Math.abs(distance) >= SWIPE_DISTANCE && Math.abs(distance) >= travelled * 0.8) {
+                // The image shows the person as others see them, so image left is their right
+                return distance < 0 ? Gesture.SWIPE_RIGHT : Gesture.SWIPE_LEFT;
+            }
+        }
+        return null;
+    }
+
+    private boolean isWave(long nowMillis) {
+        int reversals = 0;
+        int direction = 0;
+        double extreme = Double.NaN;
+        for (int i = 0; i < mSamples; i++) {
+            if (nowMillis - mSampleMillis[i] > WAVE_MILLIS) {
+                continue;
+            }
+            double x = mSampleX[i];
+            if (Double.isNaN(extreme)) {
+                extreme = x;
+            } else if (direction == 0) {
+                // Wait for the first stroke to get going
+                if (Math.abs(x - extreme) >= WAVE_AMPLITUDE) {
+                    direction = x > extreme ? 1 : -1;
+                    extreme = x;
+                }
+            } else if (direction > 0 ? x > extreme : x < extreme) {
+                extreme = x;
+            } else if (Math.abs(x - extreme) >= WAVE_AMPLITUDE) {
+                // Came back far enough from the last extreme to count as a turn
+                reversals++;
+                direction = -direction;
+                extreme = x;
+            }
+        }
+        return reversals >= WAVE_REVERSALS;
+    }
+}
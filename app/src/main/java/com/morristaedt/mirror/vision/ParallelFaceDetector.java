@@ -0,0 +1,245 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.objdetect.Objdetect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a cascade search into bands of face sizes and runs them on several cores at once.
+ *
+ * Small faces are by far the most expensive to look for: every pass of detectMultiScale shrinks
+ * the image by the scale factor, so a pass costs about 1/size^2 of the first one. The bands are
+ * cut so that each one does about the same amount of work, which puts a handful of small sizes in
+ * the first band and everything up to the full image in the last. Neighbouring bands overlap by
+ * one scale step and their results are merged with groupRectangles.
+ *
+ * Every band has its own classifier, since a CascadeClassifier can't be shared between threads.
+ * They go back to the factory on {@link #release()}, for the next detector to reuse.
+ * The calling thread runs the first band itself. OpenCV's own parallel loops are limited to one
+ * thread while this detector is in use, so the bands don't compete with them for cores.
+ */
+public class ParallelFaceDetector implements FaceDetector {
+
+    public interface DetectorFactory {
+        /**
+         * Called on the detection thread, once per band
+         *
+         * @return A new detector with its own classifier, or null if none can be made
+         */
+        CascadeFaceDetector newDetector();
+
+        /**
+         * Called once a detector is no longer used, after it was released, to free or reuse its classifier
+         */
+        void recycleDetector(CascadeFaceDetector detector);
+    }
+
+    /**
+     * Overlapping detections from neighbouring bands count as the same face within this distance
+     */
+    private static final double GROUP_EPS = 0.2;
+
+    private final DetectorFactory mFactory;
+    private final int mThreads;
+
+    private final List<CascadeFaceDetector> mDetectors = new ArrayList<>();
+    private ExecutorService mExecutor;
+    private int mPreviousOpenCvThreads = -1;
+
+    private int mPlannedMinSize = -1;
+    private int mPlannedMaxSize = -1;
+    private int[] mBandMin = new int[0];
+    private int[] mBandMax = new int[0];
+
+    private final MatOfRect mMerged = new MatOfRect();
+    private final MatOfInt mWeights = new MatOfInt();
+
+    private volatile long mDetections;
+    private volatile long mTotalNanos;
+
+    /**
+     * @param factory Makes one detector per band
+     * @param threads Number of bands, and threads to run them on. 1 runs a single band inline.
+     */
+    public ParallelFaceDetector(DetectorFactory factory, int threads) {
+        mFactory = factory;
+        mThreads = Math.max(1, threads);
+    }
+
+    @Override
+    public Rect[] detect(final Mat grayImage, int minFaceSize) {
+        long start = System.nanoTime();
+        if (mDetectors.isEmpty()) {
+            createDetectors();
+        }
+
+        int maxFaceSize = Math.min(grayImage.cols(), grayImage.rows());
+        if (minFaceSize != mPlannedMinSize || maxFaceSize != mPlannedMaxSize) {
+            planBands(minFaceSize, maxFaceSize);
+        }
+
+        List<Future<Rect[]>> futures = new ArrayList<>(mBandMin.length - 1);
+        for (int band = 1; band < mBandMin.length; band++) {
+            final CascadeFaceDetector detector = mDetectors.get(band);
+            final int bandMin = mBandMin[band];
+            final int bandMax = mBandMax[band];
+            futures.add(mExecutor.submit(new Callable<Rect[]>() {
+                @Override
+                public Rect[] call() {
+                    return detector.detect(grayImage, bandMin, bandMax);
+                }
+            }));
+        }
+
+        List<Rect> faces = new ArrayList<>();
+        addTwice(faces, mDetectors.get(0).detect(grayImage, mBandMin[0], mBandMax[0]));
+        try {
+            for (Future<Rect[]> future : futures) {
+                addTwice(faces, future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Rect[0];
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Face detection band failed", e.getCause());
+        }
+
+        Rect[] merged = merge(faces);
+        mTotalNanos += System.nanoTime() - start;
+        mDetections++;
+        return merged;
+    }
+
+    @Override
+    public void release() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+        for (CascadeFaceDetector detector : mDetectors) {
+            detector.release();
+            mFactory.recycleDetector(detector);
+        }
+        mDetectors.clear();
+        if (mPreviousOpenCvThreads >= 0) {
+            Core.setNumThreads(mPreviousOpenCvThreads);
+            mPreviousOpenCvThreads = -1;
+        }
+        mMerged.release();
+        mWeights.release();
+    }
+
+    public int getThreads() {
+        return mThreads;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder bands = new StringBuilder();
+        for (int band = 0; band < mBandMin.length; band++) {
+            bands.append(band == 0 ? "" : " ").append(mBandMin[band]).append('-').append(mBandMax[band]);
+        }
+        float averageMillis = mDetections == 0 ? 0 : mTotalNanos / (mDetections * 1000000f);
+        return String.format("parallel cascade, %d threads, bands [%s], %.2fms/detection",
+                mDetectors.size(), bands, averageMillis);
+    }
+
+    private void createDetectors() {
+        for (int i = 0; i < mThreads; i++) {
+            CascadeFaceDetector detector = mFactory.newDetector();
+            if (detector == null) {
+                // Make do with however many classifiers could be loaded
+                break;
+            }
+            mDetectors.add(detector);
+        }
+        if (mDetectors.isEmpty()) {
+            throw new IllegalStateException("No face detector to run");
+        }
+
+        if (mDetectors.size() > 1) {
+            mExecutor = Executors.newFixedThreadPool(mDetectors.size() - 1);
+            mPreviousOpenCvThreads = Core.getNumThreads();
+            Core.setNumThreads(1);
+        }
+    }
+
+    /**
+     * Cut the sizes the cascade will try into bands of about equal cost
+     */
+    private void planBands(int minSize, int maxSize) {
+        mPlannedMinSize = minSize;
+        mPlannedMaxSize = maxSize;
+
+        List<Double> sizes = new ArrayList<>();
+        double totalCost = 0;
+        for (double size = Math.max(1, minSize); size <= maxSize; size *= CascadeFaceDetector.SCALE_FACTOR) {
+            sizes.add(size);
+            totalCost += 1 / (size * size);
+        }
+
+        int bands = Math.max(1, Math.min(mDetectors.size(), sizes.size()));
+        mBandMin = new int[bands];
+        mBandMax = new int[bands];
+
+        double bandCost = totalCost / bands;
+        double cost = 0;
+        int band = 0;
+        double bandStart = Math.max(1, minSize);
+        for (double size : sizes) {
+            cost += 1 / (size * size);
+            if (band < bands - 1 && cost >= bandCost * (band + 1)) {
+                setBand(band, bandStart, size);
+                bandStart = size;
+                band++;
+            }
+        }
+        setBand(band, bandStart, 0);
+
+        if (band < bands - 1) {
+            // Rounding left the last bands without any sizes, don't run them
+            mBandMin = Arrays.copyOf(mBandMin, band + 1);
+            mBandMax = Arrays.copyOf(mBandMax, band + 1);
+        }
+    }
+
+    /**
+     * @param maxSize 0 for no upper limit
+     */
+    private void setBand(int band, double minSize, double maxSize) {
+        // Overlap the neighbouring bands by a scale step, so a face on the boundary gets its neighbours
+        mBandMin[band] = band == 0 ? (int) minSize : (int) (minSize / CascadeFaceDetector.SCALE_FACTOR);
+        mBandMax[band] = maxSize == 0 ? 0 : (int) Math.ceil(maxSize * CascadeFaceDetector.SCALE_FACTOR);
+    }
+
+    /**
+     * groupRectangles drops clusters of a single rect, so every face goes in twice
+     */
+    private static void addTwice(List<Rect> faces, Rect[] found) {
+        for (Rect face : found) {
+            faces.add(face);
+            faces.add(face);
+        }
+    }
+
+    private Rect[] merge(List<Rect> faces) {
+        if (faces.isEmpty()) {
+            return new Rect[0];
+        }
+        mMerged.fromList(faces);
+        Objdetect.groupRectangles(mMerged, mWeights, 1, GROUP_EPS);
+        return mMerged.toArray();
+    }
+}
@@ -0,0 +1,117 @@
+package com.morristaedt.mirror.vision;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.face.Face;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * {@link FaceDetector} backed by the Play Services face API, in its fast mode without landmarks or
+ * classification.
+ *
+ * The grayscale image goes in as the luminance plane of an NV21 frame with neutral chroma. The
+ * Play Services detector takes its minimum face size as a fraction of the image width when it is
+ * built, so it is rebuilt whenever that fraction changes.
+ */
+public class PlayServicesFaceDetector implements FaceDetector {
+
+    private final Context mContext;
+
+    private com.google.android.gms.vision.face.FaceDetector mDetector;
+    private float mMinFaceProportion = -1;
+
+    private final Mat mContinuousImage = new Mat();
+    private byte[] mNv21;
+    private ByteBuffer mBuffer;
+
+    public PlayServicesFaceDetector(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * @return false if the Play Services face library isn't on the device (yet). It is downloaded
+     * in the background the first time it's asked for.
+     */
+    public boolean isOperational() {
+        return getDetector(0.1f).isOperational();
+    }
+
+    @Override
+    public Rect[] detect(Mat grayImage, int minFaceSize) {
+        int width = grayImage.cols();
+        int height = grayImage.rows();
+        com.google.android.gms.vision.face.FaceDetector detector = getDetector((float) minFaceSize / width);
+
+        int pixels = width * height;
+        if (mNv21 == null || mNv21.length != pixels * 3 / 2) {
+            mNv21 = new byte[pixels * 3 / 2];
+            Arrays.fill(mNv21, pixels, mNv21.length, (byte) 128);
+            mBuffer = ByteBuffer.wrap(mNv21);
+        }
+
+        Mat image = grayImage;
+        if (!grayImage.isContinuous()) {
+            // A window into a larger image, i.e. from RoiFaceDetector
+            grayImage.copyTo(mContinuousImage);
+            image = mContinuousImage;
+        }
+        // Only copies as many bytes as the image has, the chroma after them stays neutral
+        image.get(0, 0, mNv21);
+
+        Frame frame = new Frame.Builder().setImageData(mBuffer, width, height, ImageFormat.NV21).build();
+        SparseArray<Face> faces = detector.detect(frame);
+
+        Rect[] rects = new Rect[faces.size()];
+        for (int i = 0; i < rects.length; i++) {
+            Face face = faces.valueAt(i);
+            // Faces partly out of the image can start at negative coordinates, the cascades never do
+            int left = Math.max(0, (int) face.getPosition().x);
+            int top = Math.max(0, (int) face.getPosition().y);
+            int right = Math.min(width, (int) (face.getPosition().x + face.getWidth()));
+            int bottom = Math.min(height, (int) (face.getPosition().y + face.getHeight()));
+            rects[i] = new Rect(left, top, Math.max(0, right - left), Math.max(0, bottom - top));
+        }
+        return rects;
+    }
+
+    @Override
+    public void release() {
+        if (mDetector != null) {
+            mDetector.release();
+            mDetector = null;
+        }
+        mContinuousImage.release();
+    }
+
+    @Override
+    public String toString() {
+        return "play services";
+    }
+
+    private com.google.android.gms.vision.face.FaceDetector getDetector(float minFaceProportion) {
+        if (mDetector != null && Math.abs(minFaceProportion - mMinFaceProportion) < 0.01f) {
+            return mDetector;
+        }
+        if (mDetector != null) {
+            mDetector.release();
+        }
+
+        mMinFaceProportion = minFaceProportion;
+        mDetector = new com.google.android.gms.vision.face.FaceDetector.Builder(mContext)
+                .setTrackingEnabled(false)
+                .setMode(com.google.android.gms.vision.face.FaceDetector.FAST_MODE)
+                .setLandmarkType(com.google.android.gms.vision.face.FaceDetector.NO_LANDMARKS)
+                .setClassificationType(com.google.android.gms.vision.face.FaceDetector.NO_CLASSIFICATIONS)
+                .setMinFaceSize(Math.max(0.01f, Math.min(1f, minFaceProportion)))
+                .build();
+        return mDetector;
+    }
+}
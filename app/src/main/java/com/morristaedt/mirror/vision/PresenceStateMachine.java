@@ -0,0 +1,117 @@
+package com.morristaedt.mirror.vision;
+
+/**
+ * Turns noisy per-frame face detections into a stable present / absent state.
+ *
+ * Each frame nudges a confidence value towards 1 (face seen) or 0 (no face). Someone only counts
+ * as present once the confidence has stayed above the enter level for the enter window, and only
+ * counts as gone once it has stayed below the exit level for the exit window, so a single missed
+ * detection doesn't blank the mirror.
+ */
+public class PresenceStateMachine {
+
+    public enum State {
+        ABSENT,
+        ENTERING,
+        PRESENT,
+        LEAVING
+    }
+
+    private final long mEnterMillis;
+    private final long mExitMillis;
+    private final float mEnterConfidence;
+    private final float mExitConfidence;
+    private final float mSmoothing;
+
+    private State mState = State.ABSENT;
+    private float mConfidence;
+    private long mPendingSinceMillis;
+    private long mTransitions;
+
+    /**
+     * @param enterMillis     How long confidence must stay high before someone counts as present
+     * @param exitMillis      How long confidence must stay low before someone counts as gone
+     * @param enterConfidence Confidence needed to start entering, 0 to 1
+     * @param exitConfidence  Confidence below which leaving starts, 0 to 1
+     * @param smoothing       How much of the confidence each frame replaces, 0 to 1
+     */
+    public PresenceStateMachine(long enterMillis, long exitMillis, float enterConfidence, float exitConfidence, float smoothing) {
+        mEnterMillis = enterMillis;
+        mExitMillis = exitMillis;
+        mEnterConfidence = enterConfidence;
+        mExitConfidence = exitConfidence;
+        mSmoothing = smoothing;
+    }
+
+    public PresenceStateMachine(long enterMillis, long exitMillis, float confidence) {
+        this(enterMillis, exitMillis, confidence, 1f - confidence, 0.3f);
+    }
+
+    public PresenceStateMachine() {
+        this(300, 3000, 0.6f);
+    }
+
+    /**
+     * Feed one frame's detection result
+     *
+     * @return true if the visible state (present or not) changed with this frame
+     */
+    public boolean update(boolean faceDetected, long nowMillis) {
+        mConfidence += mSmoothing * ((faceDetected ? 1f : 0f) - mConfidence);
+        boolean wasPresent = isPresent();
+
+        switch (mState) {
+            case ABSENT:
+                if (mConfidence >= mEnterConfidence) {
+                    mState = State.ENTERING;
+                    mPendingSinceMillis = nowMillis;
+                }
+                break;
+            case ENTERING:
+                if (mConfidence < mEnterConfidence) {
+                    mState = State.ABSENT;
+                } else if (nowMillis - mPendingSinceMillis >= mEnterMillis) {
+                    mState = State.PRESENT;
+                }
+                break;
+            case PRESENT:
+                if (mConfidence <= mExitConfidence) {
+                    mState = State.LEAVING;
+                    mPendingSinceMillis = nowMillis;
+                }
+                break;
+            case LEAVING:
+                if (mConfidence > mExitConfidence) {
+                    mState = State.PRESENT;
+                } else if (nowMillis - mPendingSinceMillis >= mExitMillis) {
+                    mState = State.ABSENT;
+                }
+                break;
+        }
+
+        if (wasPresent != isPresent()) {
+            mTransitions++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether someone counts as in front of the mirror. Still true while leaving.
+     */
+    public boolean isPresent() {
+        return mState == State.PRESENT || mState == State.LEAVING;
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    public float getConfidence() {
+        return mConfidence;
+    }
+
+    public long getTransitions() {
+        return mTransitions;
+    }
+}
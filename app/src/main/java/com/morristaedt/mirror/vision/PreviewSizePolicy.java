@@ -0,0 +1,68 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.android.CameraBridgeViewBase.ListItemAccessor;
+import org.opencv.core.Size;
+
+import java.util.List;
+
+/**
+ * Picks the smallest camera preview size that still shows a face big enough to detect.
+ *
+ * Someone at the mirror fills a known fraction of the frame height, and the cascade needs a
+ * minimum number of pixels to find a face. Anything bigger than that only costs camera bandwidth,
+ * color conversion and detection time.
+ */
+public class PreviewSizePolicy {
+
+    private final int mMinFacePixels;
+    private final float mFaceFraction;
+
+    /**
+     * @param minFacePixels Smallest face, in pixels, detection has to work with
+     * @param faceFraction  Fraction of the frame height a face at mirror distance takes up
+     */
+    public PreviewSizePolicy(int minFacePixels, float faceFraction) {
+        mMinFacePixels = minFacePixels;
+        mFaceFraction = faceFraction;
+    }
+
+    /**
+     * @return The smallest frame height at which a face is still mMinFacePixels tall
+     */
+    public int getMinFrameHeight() {
+        return (int) Math.ceil(mMinFacePixels / mFaceFraction);
+    }
+
+    /**
+     * @param supportedSizes Preview sizes the camera offers
+     * @param accessor       Reads width and height out of the supported sizes
+     * @return The smallest size tall enough, or the tallest one if none is
+     */
+    public Size choose(List<?> supportedSizes, ListItemAccessor accessor) {
+        int minHeight = getMinFrameHeight();
+        Object best = null;
+        Object tallest = null;
+
+        for (Object size : supportedSizes) {
+            int height = accessor.getHeight(size);
+            if (tallest == null || height > accessor.getHeight(tallest)) {
+                tallest = size;
+            }
+            if (height >= minHeight && (best == null || area(size, accessor) < area(best, accessor))) {
+                best = size;
+            }
+        }
+
+        if (best == null) {
+            best = tallest;
+        }
+        if (best == null) {
+            return new Size(0, 0);
+        }
+        return new Size(accessor.getWidth(best), accessor.getHeight(best));
+    }
+
+    private static long area(Object size, ListItemAccessor accessor) {
+        return (long) accessor.getWidth(size) * accessor.getHeight(size);
+    }
+}
@@ -0,0 +1,165 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * Searches a window around the last face found before scanning the whole image. Someone standing
+ * at the mirror barely moves, so most passes only have to scan a small region.
+ *
+ * A full scan runs when there is no known face, after a number of consecutive misses in the
+ * window, and periodically so that a second person walking up isn't missed.
+ */
+public class RoiFaceDetector implements FaceDetector {
+
+    private static final Rect[] NO_FACES = new Rect[0];
+
+    private final FaceDetector mDetector;
+    private final int mMaxMisses;
+    private final int mRefreshInterval;
+    private final double mMargin;
+
+    private final Rect mWindow = new Rect();
+
+    private Rect mLastFace;
+    private int mImageWidth;
+    private int mImageHeight;
+    private int mMisses;
+    private int mSinceFullScan;
+
+    private volatile long mHits;
+    private volatile long mMissCount;
+    private volatile long mFullScans;
+    private volatile long mFallbacks;
+
+    /**
+     * @param detector        Detector to run on the window or the whole image
+     * @param maxMisses       Consecutive misses in the window before falling back to a full scan
+     * @param refreshInterval Window searches between forced full scans
+     * @param margin          How far the window extends on each side, as a fraction of the face size
+     */
+    public RoiFaceDetector(FaceDetector detector, int maxMisses, int refreshInterval, double margin) {
+        mDetector = detector;
+        mMaxMisses = maxMisses;
+        mRefreshInterval = refreshInterval;
+        mMargin = margin;
+    }
+
+    public RoiFaceDetector(FaceDetector detector) {
+        this(detector, 3, 30, 0.5);
+    }
+
+    @Override
+    public Rect[] detect(Mat grayImage, int minFaceSize) {
+        if (grayImage.cols() != mImageWidth || grayImage.rows() != mImageHeight) {
+            // Rotation or detection size changed, the last face is meaningless now
+            mImageWidth = grayImage.cols();
+            mImageHeight = grayImage.rows();
+            mLastFace = null;
+        }
+
+        if (mLastFace == null || mMisses >= mMaxMisses || mSinceFullScan >= mRefreshInterval) {
+            if (mLastFace != null) {
+                mFallbacks++;
+            }
+            return fullScan(grayImage, minFaceSize);
+        }
+
+        mSinceFullScan++;
+        Rect window = window(mLastFace);
+        Mat roi = grayImage.submat(window);
+        Rect[] faces;
+        try {
+            faces = mDetector.detect(roi, minFaceSize);
+        } finally {
+            roi.release();
+        }
+
+        if (faces.length == 0) {
+            mMisses++;
+            mMissCount++;
+            return NO_FACES;
+        }
+
+        for (Rect face : faces) {
+            face.x += window.x;
+            face.y += window.y;
+        }
+        mHits++;
+        mMisses = 0;
+        mLastFace = largest(faces);
+        return faces;
+    }
+
+    @Override
+    public void release() {
+        mDetector.release();
+    }
+
+    /**
+     * @return Passes where the face was found in the window
+     */
+    public long getHits() {
+        return mHits;
+    }
+
+    /**
+     * @return Passes where the window was searched and nothing was found
+     */
+    public long getMisses() {
+        return mMissCount;
+    }
+
+    /**
+     * @return All passes that scanned the whole image
+     */
+    public long getFullScans() {
+        return mFullScans;
+    }
+
+    /**
+     * @return Full scans forced by repeated misses or the periodic refresh, while a face was known
+     */
+    public long getFallbacks() {
+        return mFallbacks;
+    }
+
+    @Override
+    public String toString() {
+        return "roi hits " + mHits + ", misses " + mMissCount + ", full scans " + mFullScans
+                + " (" + mFallbacks + " fallbacks)";
+    }
+
+    private Rect[] fullScan(Mat grayImage, int minFaceSize) {
+        mFullScans++;
+        mSinceFullScan = 0;
+        mMisses = 0;
+        Rect[] faces = mDetector.detect(grayImage, minFaceSize);
+        mLastFace = faces.length > 0 ? largest(faces) : null;
+        return faces;
+    }
+
+    private Rect window(Rect face) {
+        int marginX = (int) (face.width * mMargin);
+        int marginY = (int) (face.height * mMargin);
+        int left = Math.max(0, face.x - marginX);
+        int top = Math.max(0, face.y - marginY);
+        int right = Math.min(mImageWidth, face.x + face.width + marginX);
+        int bottom = Math.min(mImageHeight, face.y + face.height + marginY);
+        mWindow.x = left;
+        mWindow.y = top;
+        mWindow.width = right - left;
+        mWindow.height = bottom - top;
+        return mWindow;
+    }
+
+    private static Rect largest(Rect[] faces) {
+        Rect largest = faces[0];
+        for (Rect face : faces) {
+            if (face.area() > largest.area()) {
+                largest = face;
+            }
+        }
+        return largest.clone();
+    }
+}
@@ -0,0 +1,436 @@
+package com.morristaedt.mirror.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * The face detection path shared by every camera screen, independent of any Activity so it can
+ * also be driven by recorded frames.
+ *
+ * Each grayscale frame runs through these stages, in order:
+ * <ol>
+ * <li>{@link Stage#ACQUIRE}: duty cycle and motion gate decide whether the frame is worth looking at</li>
+ * <li>{@link Stage#PREPROCESS}: downscale to the detection width</li>
+ * <li>{@link Stage#ROTATE}: turn the small image upright</li>
+ * <li>{@link Stage#DETECT}: run the {@link FaceDetector}, inline or on a {@link DetectionWorker}</li>
+ * <li>{@link Stage#TRACK}: on frames that aren't detected, follow the last face with a {@link FaceTracker}</li>
+ * <li>{@link Stage#GESTURE}: while there is a face, look for hand gestures beside it</li>
+ * <li>{@link Stage#POSTPROCESS}: map rects back to frame coordinates and update the cadence</li>
+ * </ol>
+ * The duty cycle, motion gate, scheduler, tracker and gestures are optional. Without a scheduler every
+ * acquired frame is detected. Without a tracker the last detected faces are reported in between.
+ */
+public class VisionPipeline {
+
+    public enum Stage {
+        ACQUIRE,
+        PREPROCESS,
+        ROTATE,
+        DETECT,
+        TRACK,
+        GESTURE,
+        POSTPROCESS
+    }
+
+    public interface StageTimingListener {
+        /**
+         * Called on the frame thread after each stage that ran
+         */
+        void onStageTimed(Stage stage, long nanos);
+    }
+
+    private static final Rect[] NO_FACES = new Rect[0];
+
+    private final FaceDetector mDetector;
+    private final int mDetectionWidth;
+    private final float mFaceFraction;
+
+    private boolean mAsync;
+    private boolean mMapToSource;
+    private volatile int mAngle;
+
+    private DutyCycleController mDutyCycle;
+    private MotionGate mMotionGate;
+    private long mFaceGraceMillis;
+    private DetectionScheduler mScheduler;
+    private FaceTracker mTracker;
+    private MotionHistoryGestures mGestures;
+    private StageTimingListener mStageTimingListener;
+
+    private FramePool mFramePool;
+    private DetectionScaler mScaler;
+    private DetectionWorker mWorker;
+    private Mat mRotatedImage;
+    private final FrameTimer mFrameTimer = new FrameTimer();
+
+    private int mAbsFaceSize;
+    private boolean mDetecting;
+    private long mLastFaceMillis = Long.MIN_VALUE;
+    private boolean mMotion;
+    private Rect[] mFaces = NO_FACES;
+    private final Rect mGestureFace = new Rect();
+    private boolean mHasGestureFace;
+    private Gesture mGesture;
+
+    private long mStageStartNanos;
+
+    /**
+     * @param detector       Detector to run, released by {@link #release()}
+     * @param detectionWidth Width to downscale frames to before detection, 0 for full resolution
+     * @param faceFraction   Fraction of the frame height a face in front of the mirror takes up
+     */
+    public VisionPipeline(FaceDetector detector, int detectionWidth, float faceFraction) {
+        mDetector = detector;
+        mDetectionWidth = detectionWidth;
+        mFaceFraction = faceFraction;
+    }
+
+    /**
+     * @param async Detect on a worker thread instead of the frame thread. Set before {@link #start(int, int)}.
+     */
+    public void setAsync(boolean async) {
+        mAsync = async;
+    }
+
+    /**
+     * @param mapToSource Report faces in unrotated frame coordinates, i.e. to draw them on the preview.
+     *                    Otherwise faces are in upright coordinates.
+     */
+    public void setMapToSource(boolean mapToSource) {
+        mMapToSource = mapToSource;
+    }
+
+    /**
+     * @param angle Counter-clockwise rotation, a multiple of 90, that turns camera frames upright
+     */
+    public void setRotation(int angle) {
+        mAngle = angle;
+    }
+
+    public void setDutyCycle(DutyCycleController dutyCycle) {
+        mDutyCycle = dutyCycle;
+    }
+
+    /**
+     * @param motionGate      Only detect while something moves, once nobody is in front of the mirror
+     * @param faceGraceMillis How long to keep detecting without motion after the last face was seen.
+     *                        Someone standing still fades into the gate's background, so a missed
+     *                        detection mustn't stop detection before presence has had time to drop.
+     */
+    public void setMotionGate(MotionGate motionGate, long faceGraceMillis) {
+        mMotionGate = motionGate;
+        mFaceGraceMillis = faceGraceMillis;
+    }
+
+    public void setScheduler(DetectionScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    public void setTracker(FaceTracker tracker) {
+        mTracker = tracker;
+    }
+
+    public void setGestures(MotionHistoryGestures gestures) {
+        mGestures = gestures;
+    }
+
+    public void setStageTimingListener(StageTimingListener listener) {
+        mStageTimingListener = listener;
+    }
+
+    /**
+     * Allocate buffers for frames of the given size and start the worker, if any
+     */
+    public void start(int width, int height) {
+        mFramePool = new FramePool();
+        mRotatedImage = mFramePool.newMat();
+        mScaler = new DetectionScaler(mDetectionWidth, mFramePool.newMat());
+        mAbsFaceSize = (int) (height * mFaceFraction);
+        mFaces = NO_FACES;
+        mDetecting = false;
+        mLastFaceMillis = Long.MIN_VALUE;
+        mMotion = false;
+
+        if (mTracker != null) {
+            mTracker.reset();
+        }
+        if (mGestures != null) {
+            mGestures.reset();
+        }
+        mHasGestureFace = false;
+        mGesture = null;
+
+        if (mScheduler != null) {
+            mScheduler.reset();
+        }
+        if (mMotionGate != null) {
+            mMotionGate.reset();
+        }
+        if (mAsync) {
+            mWorker = new DetectionWorker(mFramePool, mDetector);
+            mWorker.start();
+        }
+    }
+
+    /**
+     * Stop the worker and free the frame buffers. The pipeline can be started again.
+     */
+    public void stop() {
+        if (mWorker != null) {
+            mWorker.stop();
+        }
+        if (mFramePool != null) {
+            mFramePool.release();
+            mFramePool = null;
+        }
+    }
+
+    /**
+     * Stop and free everything, including the detector and motion gate
+     */
+    public void release() {
+        stop();
+        mDetector.release();
+        if (mMotionGate != null) {
+            mMotionGate.release();
+        }
+        if (mTracker != null) {
+            mTracker.release();
+        }
+        if (mGestures != null) {
+            mGestures.release();
+        }
+    }
+
+    /**
+     * Run one grayscale camera frame through the pipeline
+     *
+     * @param grayFrame Single channel frame, not modified
+     * @param nowMillis Monotonic capture time of the frame
+     * @return false if the duty cycle skipped the frame entirely
+     */
+    public boolean process(Mat grayFrame, long nowMillis) {
+        if (mDutyCycle != null && !mDutyCycle.shouldProcess(nowMillis)) {
+            return false;
+        }
+
+        mFrameTimer.start();
+        startStage();
+
+        if (mWorker != null) {
+            // Pick up whatever the worker finished since the last frame
+            DetectionWorker.Result result = mWorker.pollResult();
+            if (result != null) {
+                mDetecting = false;
+                if (result.faces != null) {
+                    onDetected(result.faces, result.image, grayFrame, nowMillis);
+                }
+                mWorker.recycle(result);
+            }
+        }
+
+        // With nobody in front of the mirror, only wake the cascade up when something moves
+        if (mFaces.length > 0) {
+            mLastFaceMillis = nowMillis;
+        }
+        boolean absent = mLastFaceMillis == Long.MIN_VALUE || nowMillis - mLastFaceMillis > mFaceGraceMillis;
+        boolean motion = mMotionGate == null || mMotionGate.update(grayFrame);
+        if (motion && !mMotion && absent && mScheduler != null) {
+            mScheduler.onMotion();
+        }
+        mMotion = motion;
+        boolean detect = false;
+        if (motion || !absent) {
+            if (mDetecting) {
+                // The worker is still on an earlier frame, its result arrives on a later one
+                if (mScheduler != null) {
+                    mScheduler.onBusy();
+                }
+            } else {
+                detect = mScheduler == null || mScheduler.shouldDetect(nowMillis);
+            }
+        }
+        boolean track = !detect && mTracker != null && mTracker.isTracking();
+        boolean gestures = mGestures != null && mHasGestureFace;
+        endStage(Stage.ACQUIRE);
+
+        if (detect || track || gestures) {
+            // Shrink first, so only the small detection image needs rotating
+            Mat scaled = mScaler.scale(grayFrame);
+            endStage(Stage.PREPROCESS);
+
+            Mat upright = FrameRotator.rotate(scaled, mRotatedImage, mAngle);
+            endStage(Stage.ROTATE);
+
+            if (track) {
+                track(upright, grayFrame);
+            } else if (detect) {
+                detect(upright, grayFrame, nowMillis);
+            }
+
+            if (gestures && mHasGestureFace) {
+                Gesture gesture = mGestures.update(upright, mGestureFace, nowMillis);
+                if (gesture != null) {
+                    mGesture = gesture;
+                }
+                endStage(Stage.GESTURE);
+            }
+        }
+
+        if (mDutyCycle != null) {
+            mDutyCycle.onFrameProcessed(mMotion || mFaces.length > 0, nowMillis);
+        }
+        mFrameTimer.stop();
+        return true;
+    }
+
+    /**
+     * @return The faces from the most recent detection. On frames that weren't detected these are
+     * the last known faces.
+     */
+    public Rect[] getFaces() {
+        return mFaces;
+    }
+
+    /**
+     * @return The gesture recognised since the last call, or null
+     */
+    public Gesture pollGesture() {
+        Gesture gesture = mGesture;
+        mGesture = null;
+        return gesture;
+    }
+
+    public FaceDetector getDetector() {
+        return mDetector;
+    }
+
+    public FrameTimer getFrameTimer() {
+        return mFrameTimer;
+    }
+
+    /**
+     * @return A one line summary of every stage's counters, for logging
+     */
+    public String getStats(long nowMillis) {
+        StringBuilder stats = new StringBuilder("frame cost ").append(mFrameTimer);
+        if (mScheduler != null) {
+            stats.append(", ").append(mScheduler);
+        }
+        if (mMotionGate != null) {
+            stats.append(", ").append(mMotionGate);
+        }
+        if (mDutyCycle != null) {
+            stats.append(", duty cycle ").append(mDutyCycle.toString(nowMillis));
+        }
+        if (mWorker != null) {
+            stats.append(", worker ").append(mWorker);
+        }
+        if (mTracker != null) {
+            stats.append(", ").append(mTracker);
+        }
+        if (mGestures != null) {
+            stats.append(", ").append(mGestures);
+        }
+        return stats.append(", ").append(mDetector).toString();
+    }
+
+    private void detect(Mat upright, Mat grayFrame, long nowMillis) {
+        int minFaceSize = mScaler.toScaled(mAbsFaceSize);
+        if (mWorker != null) {
+            // The frame thread moves on to the next frame, the result arrives on a later one
+            mDetecting = mWorker.submit(upright, mScaler.getScale(), minFaceSize, System.nanoTime());
+            endStage(Stage.DETECT);
+            return;
+        }
+
+        Rect[] faces = mDetector.detect(upright, minFaceSize);
+        endStage(Stage.DETECT);
+
+        onDetected(mScaler.toFrame(faces), upright, grayFrame, nowMillis);
+        endStage(Stage.POSTPROCESS);
+    }
+
+    private void track(Mat upright, Mat grayFrame) {
+        Rect[] faces = mTracker.track(upright, mScaler.getScale());
+        endStage(Stage.TRACK);
+
+        if (faces == null) {
+            // Lost it, keep the last position until the cascade has had another look
+            if (mScheduler != null) {
+                mScheduler.requestDetection();
+            }
+        } else {
+            updateGestureFace(faces);
+            mFaces = mapToSource(faces, grayFrame);
+        }
+        endStage(Stage.POSTPROCESS);
+    }
+
+    /**
+     * @param faces   Detected faces in upright frame coordinates
+     * @param upright The detection image they were found in, which the worker's results carry along
+     */
+    private void onDetected(Rect[] faces, Mat upright, Mat grayFrame, long nowMillis) {
+        if (mTracker != null) {
+            mTracker.anchor(faces, mScaler.getScale(), upright);
+        }
+        if (mScheduler != null) {
+            mScheduler.onDetected(faces, nowMillis);
+        }
+        updateGestureFace(faces);
+        mFaces = mapToSource(faces, grayFrame);
+    }
+
+    /**
+     * Remember the largest face in detection image coordinates, for looking for gestures beside it
+     *
+     * @param faces Faces in upright frame coordinates
+     */
+    private void updateGestureFace(Rect[] faces) {
+        if (mGestures == null) {
+            return;
+        }
+        if (faces.length == 0) {
+            if (mHasGestureFace) {
+                mHasGestureFace = false;
+                mGestures.reset();
+            }
+            return;
+        }
+
+        Rect largest = faces[0];
+        for (Rect face : faces) {
+            if (face.area() > largest.area()) {
+                largest = face;
+            }
+        }
+        double scale = mScaler.getScale();
+        mGestureFace.x = (int) Math.round(largest.x / scale);
+        mGestureFace.y = (int) Math.round(largest.y / scale);
+        mGestureFace.width = (int) Math.round(largest.width / scale);
+        mGestureFace.height = (int) Math.round(largest.height / scale);
+        mHasGestureFace = true;
+    }
+
+    private Rect[] mapToSource(Rect[] faces, Mat grayFrame) {
+        if (mMapToSource) {
+            return FrameRotator.toSource(faces, mAngle, grayFrame.cols(), grayFrame.rows());
+        }
+        return faces;
+    }
+
+    private void startStage() {
+        if (mStageTimingListener != null) {
+            mStageStartNanos = System.nanoTime();
+        }
+    }
+
+    private void endStage(Stage stage) {
+        if (mStageTimingListener != null) {
+            long now = System.nanoTime();
+            mStageTimingListener.onStageTimed(stage, now - mStageStartNanos);
+            mStageStartNanos = now;
+        }
+    }
+}
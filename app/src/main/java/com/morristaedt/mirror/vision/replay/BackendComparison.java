@@ -0,0 +1,124 @@
+package com.morristaedt.mirror.vision.replay;
+
+import com.morristaedt.mirror.vision.DetectionScaler;
+import com.morristaedt.mirror.vision.FaceDetector;
+import com.morristaedt.mirror.vision.FrameRotator;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs several {@link FaceDetector} backends on exactly the same frames, scaled and rotated the
+ * way the pipeline does it, and compares what each costs per frame and how accurate it is.
+ *
+ * Every backend sees every frame: there is no scheduler, motion gate or tracker, so the numbers
+ * are for the detector alone. Only depends on Android through the backends themselves, so it runs
+ * both in {@link ReplayBenchmark} and on a device.
+ */
+public class BackendComparison {
+
+    private final int mDetectionWidth;
+    private final float mFaceFraction;
+    private final int mAngle;
+
+    private final List<String> mNames = new ArrayList<>();
+    private final List<FaceDetector> mDetectors = new ArrayList<>();
+    private final List<LatencySamples> mLatencies = new ArrayList<>();
+    private final List<FrameLabels> mScores = new ArrayList<>();
+
+    private int mFrames;
+
+    /**
+     * @param detectionWidth Width to downscale frames to, as in the pipeline
+     * @param faceFraction   Fraction of the frame height a face takes up
+     * @param angle          Counter-clockwise rotation that turns the frames upright
+     */
+    public BackendComparison(int detectionWidth, float faceFraction, int angle) {
+        mDetectionWidth = detectionWidth;
+        mFaceFraction = faceFraction;
+        mAngle = angle;
+    }
+
+    /**
+     * @param detector Released along with the comparison
+     */
+    public void addBackend(String name, FaceDetector detector) {
+        mNames.add(name);
+        mDetectors.add(detector);
+        mLatencies.add(new LatencySamples());
+    }
+
+    /**
+     * Replay every frame of the source through every backend
+     *
+     * @param labels Labels to score against, or null to only measure cost
+     */
+    public void run(FrameSource source, FrameLabels labels) {
+        mScores.clear();
+        if (labels != null) {
+            for (int i = 0; i < mDetectors.size(); i++) {
+                mScores.add(new FrameLabels(labels));
+            }
+        }
+
+        Mat gray = new Mat();
+        Mat rotated = new Mat();
+        DetectionScaler scaler = new DetectionScaler(mDetectionWidth);
+        try {
+            while (source.read(gray)) {
+                Mat upright = FrameRotator.rotate(scaler.scale(gray), rotated, mAngle);
+                int minFaceSize = scaler.toScaled((int) (gray.rows() * mFaceFraction));
+
+                for (int i = 0; i < mDetectors.size(); i++) {
+                    long start = System.nanoTime();
+                    Rect[] faces = mDetectors.get(i).detect(upright, minFaceSize);
+                    mLatencies.get(i).add(System.nanoTime() - start);
+
+                    if (!mScores.isEmpty()) {
+                        FrameRotator.toSource(scaler.toFrame(faces), mAngle, gray.cols(), gray.rows());
+                        mScores.get(i).score(source.getFrameName(), faces);
+                    }
+                }
+                mFrames++;
+            }
+        } finally {
+            source.release();
+            scaler.release();
+            rotated.release();
+            gray.release();
+        }
+    }
+
+    /**
+     * @return A table with a row per backend, for printing or logging
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(mFrames).append(" frames\n");
+        report.append(LatencySamples.header("backend"));
+        if (!mScores.isEmpty()) {
+            report.append(String.format(" %9s %9s", "precision", "recall"));
+        }
+        report.append('\n');
+
+        for (int i = 0; i < mDetectors.size(); i++) {
+            report.append(mLatencies.get(i).format(mNames.get(i)));
+            if (!mScores.isEmpty()) {
+                FrameLabels score = mScores.get(i);
+                report.append(String.format(" %9.3f %9.3f", score.getPrecision(), score.getRecall()));
+            }
+            report.append('\n');
+        }
+        return report.toString();
+    }
+
+    public void release() {
+        for (FaceDetector detector : mDetectors) {
+            detector.release();
+        }
+        mDetectors.clear();
+    }
+}
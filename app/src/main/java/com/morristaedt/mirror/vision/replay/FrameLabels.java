@@ -0,0 +1,143 @@
+package com.morristaedt.mirror.vision.replay;
+
+import org.opencv.core.Rect;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hand labelled face rects for recorded frames, and precision/recall of detections against them.
+ *
+ * The labels file has one line per labelled frame: the frame name followed by x, y, width and
+ * height of each face, in unrotated frame pixels. A frame listed without any rects is labelled as
+ * having nobody in it. Frames that aren't listed aren't scored. Lines starting with # are ignored.
+ * <pre>
+ * frame_00012.png 210 96 88 88
+ * frame_00013.png
+ * </pre>
+ */
+public class FrameLabels {
+
+    /**
+     * A detection counts as the labelled face if they overlap by at least this much
+     */
+    private static final double MIN_OVERLAP = 0.5;
+
+    private final Map<String, Rect[]> mLabels = new HashMap<>();
+
+    private long mFramesScored;
+    private long mTruePositives;
+    private long mFalsePositives;
+    private long mFalseNegatives;
+
+    public FrameLabels(File labelsFile) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(labelsFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("[\\s,]+");
+                if ((fields.length - 1) % 4 != 0) {
+                    throw new IOException("Expected x y width height per face: " + line);
+                }
+                Rect[] faces = new Rect[(fields.length - 1) / 4];
+                for (int i = 0; i < faces.length; i++) {
+                    int field = 1 + i * 4;
+                    faces[i] = new Rect(Integer.parseInt(fields[field]), Integer.parseInt(fields[field + 1]),
+                            Integer.parseInt(fields[field + 2]), Integer.parseInt(fields[field + 3]));
+                }
+                mLabels.put(fields[0], faces);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Share the labels of another instance, with a score of its own
+     */
+    public FrameLabels(FrameLabels labels) {
+        mLabels.putAll(labels.mLabels);
+    }
+
+    /**
+     * Score the faces detected on a frame, if it is labelled
+     */
+    public void score(String frameName, Rect[] detected) {
+        Rect[] labelled = mLabels.get(frameName);
+        if (labelled == null) {
+            return;
+        }
+        mFramesScored++;
+
+        // Greedily pair each labelled face with the best unclaimed detection
+        boolean[] claimed = new boolean[detected.length];
+        for (Rect face : labelled) {
+            int best = -1;
+            double bestOverlap = MIN_OVERLAP;
+            for (int i = 0; i < detected.length; i++) {
+                double overlap = overlap(face, detected[i]);
+                if (!claimed[i] && overlap >= bestOverlap) {
+                    best = i;
+                    bestOverlap = overlap;
+                }
+            }
+            if (best >= 0) {
+                claimed[best] = true;
+                mTruePositives++;
+            } else {
+                mFalseNegatives++;
+            }
+        }
+        for (boolean match : claimed) {
+            if (!match) {
+                mFalsePositives++;
+            }
+        }
+    }
+
+    /**
+     * @return Intersection over union of the two rects
+     */
+    static double overlap(Rect a, Rect b) {
+        int width = Math.min(a.x + a.width, b.x + b.width) - Math.max(a.x, b.x);
+        int height = Math.min(a.y + a.height, b.y + b.height) - Math.max(a.y, b.y);
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        double intersection = (double) width * height;
+        return intersection / ((double) a.width * a.height + (double) b.width * b.height - intersection);
+    }
+
+    public int getLabelledFrames() {
+        return mLabels.size();
+    }
+
+    public long getFramesScored() {
+        return mFramesScored;
+    }
+
+    public double getPrecision() {
+        long detections = mTruePositives + mFalsePositives;
+        return detections == 0 ? 1.0 : (double) mTruePositives / detections;
+    }
+
+    public double getRecall() {
+        long faces = mTruePositives + mFalseNegatives;
+        return faces == 0 ? 1.0 : (double) mTruePositives / faces;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("precision %.3f, recall %.3f over %d labelled frames (%d hits, %d false, %d missed)",
+                getPrecision(), getRecall(), mFramesScored, mTruePositives, mFalsePositives, mFalseNegatives);
+    }
+}
@@ -0,0 +1,24 @@
+package com.morristaedt.mirror.vision.replay;
+
+import org.opencv.core.Mat;
+
+/**
+ * Recorded frames to feed through the vision pipeline in place of the camera
+ */
+public interface FrameSource {
+
+    /**
+     * Read the next frame as grayscale, the way {@code CvCameraViewFrame.gray()} delivers it
+     *
+     * @param gray Mat to read into, reused across calls
+     * @return false once there are no more frames
+     */
+    boolean read(Mat gray);
+
+    /**
+     * @return A name for the last frame read, used to look up its labels
+     */
+    String getFrameName();
+
+    void release();
+}
@@ -0,0 +1,59 @@
+package com.morristaedt.mirror.vision.replay;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+
+/**
+ * Replays a directory of images in file name order, i.e. the frames dumped by
+ * {@link com.morristaedt.mirror.vision.FrameRecorder}
+ */
+public class ImageDirectorySource implements FrameSource {
+
+    private final File[] mFiles;
+    private int mIndex = -1;
+
+    public ImageDirectorySource(File directory) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                String lower = name.toLowerCase();
+                return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".pgm");
+            }
+        });
+        mFiles = files != null ? files : new File[0];
+        Arrays.sort(mFiles);
+    }
+
+    @Override
+    public boolean read(Mat gray) {
+        while (++mIndex < mFiles.length) {
+            Mat image = Imgcodecs.imread(mFiles[mIndex].getPath(), Imgcodecs.IMREAD_GRAYSCALE);
+            if (!image.empty()) {
+                image.copyTo(gray);
+                image.release();
+                return true;
+            }
+            // Not an image after all, move on to the next file
+            image.release();
+        }
+        return false;
+    }
+
+    @Override
+    public String getFrameName() {
+        return mFiles[mIndex].getName();
+    }
+
+    public int getFrameCount() {
+        return mFiles.length;
+    }
+
+    @Override
+    public void release() {
+        // Frames are read one at a time, nothing is held open
+    }
+}
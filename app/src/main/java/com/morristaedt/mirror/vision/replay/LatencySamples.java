@@ -0,0 +1,52 @@
+package com.morristaedt.mirror.vision.replay;
+
+import java.util.Arrays;
+
+/**
+ * Every latency sample of a run, kept so percentiles are exact
+ */
+class LatencySamples {
+
+    private long[] mSamples = new long[1024];
+    private int mSize;
+
+    void add(long nanos) {
+        if (mSize == mSamples.length) {
+            mSamples = Arrays.copyOf(mSamples, mSize * 2);
+        }
+        mSamples[mSize++] = nanos;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @param fraction 0.5 for the median, 1 for the maximum
+     * @return The sample at that fraction, in milliseconds
+     */
+    double percentile(double fraction) {
+        if (mSize == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(mSamples, mSize);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * @return Column titles for {@link #format(String)}
+     */
+    static String header(String name) {
+        return String.format("%-14s %8s %8s %8s %8s %8s", name, "count", "p50 ms", "p95 ms", "p99 ms", "max ms");
+    }
+
+    /**
+     * @return One row of a table under {@link #header(String)}
+     */
+    String format(String name) {
+        return String.format("%-14s %8d %8.2f %8.2f %8.2f %8.2f", name, mSize,
+                percentile(0.50), percentile(0.95), percentile(0.99), percentile(1.0));
+    }
+}
@@ -0,0 +1,167 @@
+package com.morristaedt.mirror.network;
+
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import retrofit.http.GET;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unchanged responses should cost a 304 instead of a full download, and services that allow stale
+ * responses shouldn't ask the server at all while their cached response is within that allowance.
+ */
+public class HttpCacheTest {
+
+    @ClassRule
+    public static final TemporaryFolder sCacheFolder = new TemporaryFolder();
+
+    interface QuoteService {
+        @GET("/quote")
+        Quote getQuote();
+    }
+
+    static class Quote {
+        String symbol;
+    }
+
+    private MockWebServer mServer;
+
+    @BeforeClass
+    public static void initCache() {
+        // The shared client keeps its cache for the whole run, every test gets a server of its own
+        SharedHttpClient.init(sCacheFolder.getRoot());
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        SharedHttpClient.getMetrics().reset();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void revalidatesWithETag() throws Exception {
+        mServer.enqueue(new MockResponse()
+                .setHeader("Cache-Control", "no-cache")
+                .setHeader("ETag", "\"v1\"")
+                .setBody("headline"));
+        mServer.enqueue(new MockResponse().setResponseCode(304));
+
+        assertEquals("headline", fetch("/feed"));
+        Response response = SharedHttpClient.get().newCall(newRequest("/feed")).execute();
+        assertEquals("headline", response.body().string());
+
+        assertNull(mServer.takeRequest().getHeader("If-None-Match"));
+        assertEquals("\"v1\"", mServer.takeRequest().getHeader("If-None-Match"));
+        assertEquals(304, response.networkResponse().code());
+        assertNotNull(response.cacheResponse());
+        assertTrue(SharedHttpClient.getMetrics().toString().contains("1 not modified"));
+    }
+
+    @Test
+    public void revalidatesWithLastModified() throws Exception {
+        String lastModified = "Mon, 01 Feb 2016 10:00:00 GMT";
+        mServer.enqueue(new MockResponse()
+                .setHeader("Cache-Control", "no-cache")
+                .setHeader("Last-Modified", lastModified)
+                .setBody("forecast"));
+        mServer.enqueue(new MockResponse().setResponseCode(304));
+
+        assertEquals("forecast", fetch("/forecast"));
+        assertEquals("forecast", fetch("/forecast"));
+
+        assertNull(mServer.takeRequest().getHeader("If-Modified-Since"));
+        assertEquals(lastModified, mServer.takeRequest().getHeader("If-Modified-Since"));
+    }
+
+    @Test
+    public void changedResponseIsDownloadedAgain() throws Exception {
+        mServer.enqueue(new MockResponse()
+                .setHeader("Cache-Control", "no-cache")
+                .setHeader("ETag", "\"v1\"")
+                .setBody("old"));
+        mServer.enqueue(new MockResponse()
+                .setHeader("Cache-Control", "no-cache")
+                .setHeader("ETag", "\"v2\"")
+                .setBody("new"));
+
+        assertEquals("old", fetch("/feed"));
+        assertEquals("new", fetch("/feed"));
+    }
+
+    @Test
+    public void maxStaleServesExpiredResponseFromCache() throws Exception {
+        mServer.enqueue(new MockResponse()
+                .setHeader("Cache-Control", "max-age=0")
+                .setBody("{\"symbol\":\"ETSY\"}"));
+
+        QuoteService service = RestServices.get(mServer.url("/").toString(), QuoteService.class, 5);
+        assertEquals("ETSY", service.getQuote().symbol);
+        assertEquals("ETSY", service.getQuote().symbol);
+
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(RestServices.maxStale(5), mServer.takeRequest().getHeader("Cache-Control"));
+    }
+
+    @Test
+    public void withoutMaxStaleExpiredResponseIsRevalidated() throws Exception {
+        mServer.enqueue(new MockResponse()
+                .setHeader("Cache-Control", "max-age=0")
+                .setHeader("ETag", "\"v1\"")
+                .setBody("{\"symbol\":\"ETSY\"}"));
+        mServer.enqueue(new MockResponse().setResponseCode(304));
+
+        QuoteService service = RestServices.get(mServer.url("/").toString(), QuoteService.class);
+        assertEquals("ETSY", service.getQuote().symbol);
+        assertEquals("ETSY", service.getQuote().symbol);
+
+        assertEquals(2, mServer.getRequestCount());
+        RecordedRequest first = mServer.takeRequest();
+        assertNull(first.getHeader("Cache-Control"));
+        assertEquals("\"v1\"", mServer.takeRequest().getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void mustRevalidateOverridesMaxStale() throws Exception {
+        mServer.enqueue(new MockResponse()
+                .setHeader("Cache-Control", "max-age=0, must-revalidate")
+                .setHeader("ETag", "\"v1\"")
+                .setBody("{\"symbol\":\"ETSY\"}"));
+        mServer.enqueue(new MockResponse().setResponseCode(304));
+
+        QuoteService service = RestServices.get(mServer.url("/").toString(), QuoteService.class, 5);
+        assertEquals("ETSY", service.getQuote().symbol);
+        assertEquals("ETSY", service.getQuote().symbol);
+
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    private Request newRequest(String path) {
+        return new Request.Builder().url(mServer.url(path)).build();
+    }
+
+    private String fetch(String path) throws IOException {
+        return SharedHttpClient.get().newCall(newRequest(path)).execute().body().string();
+    }
+}
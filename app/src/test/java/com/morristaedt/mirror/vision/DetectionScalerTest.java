@@ -0,0 +1,53 @@
+package com.morristaedt.mirror.vision;
+
+import org.junit.Test;
+import org.opencv.core.Rect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Faces found on the downscaled detection image have to be reported in full resolution coordinates
+ */
+public class DetectionScalerTest {
+
+    @Test
+    public void unscaledRectsAreLeftAlone() {
+        Rect[] rects = {new Rect(10, 20, 30, 40)};
+        assertSame(rects, DetectionScaler.toFrame(rects, 1.0));
+        assertEquals(new Rect(10, 20, 30, 40), rects[0]);
+    }
+
+    @Test
+    public void scalesEveryRectInPlace() {
+        Rect[] rects = {new Rect(10, 20, 30, 40), new Rect(0, 0, 1, 1)};
+        DetectionScaler.toFrame(rects, 4.0);
+        assertEquals(new Rect(40, 80, 120, 160), rects[0]);
+        assertEquals(new Rect(0, 0, 4, 4), rects[1]);
+    }
+
+    @Test
+    public void roundsFractionalScales() {
+        // A 800px wide frame detected at 320px
+        Rect[] rects = {new Rect(33, 17, 51, 51)};
+        DetectionScaler.toFrame(rects, 800 / 320.0);
+        assertEquals(new Rect(83, 43, 128, 128), rects[0]);
+    }
+
+    @Test
+    public void noFaces() {
+        assertEquals(0, DetectionScaler.toFrame(new Rect[0], 2.0).length);
+    }
+
+    @Test
+    public void scaledAndRotatedFaceMapsBackToTheCameraFrame() {
+        // A 1280x720 frame is shrunk to 320x180, then turned upright into 180x320
+        Rect[] faces = {new Rect(40, 100, 60, 60)};
+
+        DetectionScaler.toFrame(faces, 1280 / 320.0);
+        assertEquals(new Rect(160, 400, 240, 240), faces[0]);
+
+        FrameRotator.toSource(faces, 90, 1280, 720);
+        assertEquals(new Rect(1280 - 400 - 240, 160, 240, 240), faces[0]);
+    }
+}
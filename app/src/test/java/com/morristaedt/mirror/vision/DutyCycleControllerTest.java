@@ -0,0 +1,165 @@
+package com.morristaedt.mirror.vision;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the duty cycle with a fake 30fps camera, scripting when there is activity in front of it
+ */
+public class DutyCycleControllerTest {
+
+    private static final long IDLE_AFTER_MILLIS = 60 * 1000;
+    private static final long IDLE_SAMPLE_MILLIS = 1000;
+    private static final long FRAME_MILLIS = 33;
+
+    /**
+     * Delivers frames at a fixed rate and feeds the processed ones back as the pipeline would
+     */
+    private static class FakeFrameSource {
+        private final DutyCycleController mDutyCycle;
+        long mNowMillis = 1000;
+        boolean mActivity;
+        int mDelivered;
+        int mProcessed;
+
+        FakeFrameSource(DutyCycleController dutyCycle) {
+            mDutyCycle = dutyCycle;
+        }
+
+        /**
+         * @return How many of the frames delivered over the given time were processed
+         */
+        int run(long millis) {
+            int processed = mProcessed;
+            long end = mNowMillis + millis;
+            while (mNowMillis < end) {
+                deliverFrame();
+            }
+            return mProcessed - processed;
+        }
+
+        /**
+         * @return Whether the frame was processed
+         */
+        boolean deliverFrame() {
+            mDelivered++;
+            boolean process = mDutyCycle.shouldProcess(mNowMillis);
+            if (process) {
+                mProcessed++;
+                mDutyCycle.onFrameProcessed(mActivity, mNowMillis);
+            }
+            mNowMillis += FRAME_MILLIS;
+            return process;
+        }
+    }
+
+    private DutyCycleController mDutyCycle;
+    private FakeFrameSource mCamera;
+    private final List<DutyCycleController.State> mTransitions = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mDutyCycle = new DutyCycleController(IDLE_AFTER_MILLIS, IDLE_SAMPLE_MILLIS);
+        mDutyCycle.setDutyCycleListener(new DutyCycleController.DutyCycleListener() {
+            @Override
+            public void onDutyCycleChanged(DutyCycleController.State state) {
+                mTransitions.add(state);
+            }
+        });
+        mCamera = new FakeFrameSource(mDutyCycle);
+    }
+
+    @Test
+    public void startsActiveProcessingEveryFrame() {
+        assertEquals(DutyCycleController.State.ACTIVE, mDutyCycle.getState());
+        mCamera.run(10 * 1000);
+        assertEquals(mCamera.mDelivered, mCamera.mProcessed);
+        assertEquals(0, mDutyCycle.getSkippedFrames());
+    }
+
+    @Test
+    public void staysActiveWhileThereIsActivity() {
+        mCamera.mActivity = true;
+        mCamera.run(5 * IDLE_AFTER_MILLIS);
+        assertEquals(DutyCycleController.State.ACTIVE, mDutyCycle.getState());
+        assertTrue(mTransitions.isEmpty());
+    }
+
+    @Test
+    public void goesIdleAfterTheAbsencePeriod() {
+        mCamera.run(IDLE_AFTER_MILLIS - 100);
+        assertEquals(DutyCycleController.State.ACTIVE, mDutyCycle.getState());
+
+        mCamera.run(200);
+        assertEquals(DutyCycleController.State.IDLE, mDutyCycle.getState());
+        assertEquals(1, mTransitions.size());
+        assertEquals(DutyCycleController.State.IDLE, mTransitions.get(0));
+    }
+
+    @Test
+    public void samplesOneFramePerIntervalWhileIdle() {
+        mCamera.run(IDLE_AFTER_MILLIS + 100);
+        assertEquals(DutyCycleController.State.IDLE, mDutyCycle.getState());
+
+        int processed = mCamera.run(10 * IDLE_SAMPLE_MILLIS);
+        assertTrue("Processed " + processed, processed >= 9 && processed <= 10);
+        assertTrue(mDutyCycle.getSkippedFrames() > 250);
+    }
+
+    @Test
+    public void activityOnASampledFrameGoesStraightBackToFullRate() {
+        mCamera.run(IDLE_AFTER_MILLIS + 100);
+
+        // Someone walks in, the next sampled frame sees them
+        mCamera.mActivity = true;
+        while (!mCamera.deliverFrame()) {
+            assertTrue(mCamera.mNowMillis < IDLE_AFTER_MILLIS + 100 + 2 * IDLE_SAMPLE_MILLIS);
+        }
+        assertEquals(DutyCycleController.State.ACTIVE, mDutyCycle.getState());
+        assertEquals(DutyCycleController.State.ACTIVE, mTransitions.get(mTransitions.size() - 1));
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(mCamera.deliverFrame());
+        }
+    }
+
+    @Test
+    public void absencePeriodStartsOverAfterActivity() {
+        mCamera.run(IDLE_AFTER_MILLIS / 2);
+        mCamera.mActivity = true;
+        mCamera.deliverFrame();
+        mCamera.mActivity = false;
+
+        mCamera.run(IDLE_AFTER_MILLIS - 100);
+        assertEquals(DutyCycleController.State.ACTIVE, mDutyCycle.getState());
+        mCamera.run(200);
+        assertEquals(DutyCycleController.State.IDLE, mDutyCycle.getState());
+    }
+
+    @Test
+    public void publishesTimeSpentInEachState() {
+        long start = mCamera.mNowMillis;
+        mCamera.run(IDLE_AFTER_MILLIS + 100);
+        long idleSince = mCamera.mNowMillis;
+        mCamera.run(30 * 1000);
+        long now = mCamera.mNowMillis;
+
+        long active = mDutyCycle.getMillisIn(DutyCycleController.State.ACTIVE, now);
+        long idle = mDutyCycle.getMillisIn(DutyCycleController.State.IDLE, now);
+        assertEquals(now - start, active + idle);
+        assertTrue("Active " + active, Math.abs(active - IDLE_AFTER_MILLIS) <= FRAME_MILLIS);
+        assertTrue("Idle " + idle, idle >= now - idleSince);
+
+        mCamera.mActivity = true;
+        mCamera.run(IDLE_SAMPLE_MILLIS + FRAME_MILLIS);
+        now = mCamera.mNowMillis;
+        assertEquals(now - start, mDutyCycle.getMillisIn(DutyCycleController.State.ACTIVE, now)
+                + mDutyCycle.getMillisIn(DutyCycleController.State.IDLE, now));
+    }
+}
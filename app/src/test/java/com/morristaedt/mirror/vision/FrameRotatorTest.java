@@ -0,0 +1,67 @@
+package com.morristaedt.mirror.vision;
+
+import org.junit.Test;
+import org.opencv.core.Rect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Rects found on the upright image have to land on the same pixels of the unrotated camera frame
+ */
+public class FrameRotatorTest {
+
+    // A landscape camera frame, upright once turned by 90 degrees either way
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    @Test
+    public void noRotationLeavesRectsAlone() {
+        Rect[] rects = {new Rect(10, 20, 30, 40)};
+        assertSame(rects, FrameRotator.toSource(rects, 0, WIDTH, HEIGHT));
+        assertEquals(new Rect(10, 20, 30, 40), rects[0]);
+    }
+
+    @Test
+    public void quarterTurnCounterClockwise() {
+        // The upright image is 480x640, its top left corner was the frame's top right corner
+        Rect[] rects = {new Rect(0, 0, 100, 50)};
+        FrameRotator.toSource(rects, 90, WIDTH, HEIGHT);
+        assertEquals(new Rect(WIDTH - 50, 0, 50, 100), rects[0]);
+    }
+
+    @Test
+    public void halfTurn() {
+        Rect[] rects = {new Rect(0, 0, 100, 50)};
+        FrameRotator.toSource(rects, 180, WIDTH, HEIGHT);
+        assertEquals(new Rect(WIDTH - 100, HEIGHT - 50, 100, 50), rects[0]);
+    }
+
+    @Test
+    public void quarterTurnClockwise() {
+        // The upright image's top left corner was the frame's bottom left corner
+        Rect[] rects = {new Rect(0, 0, 100, 50)};
+        FrameRotator.toSource(rects, 270, WIDTH, HEIGHT);
+        assertEquals(new Rect(0, HEIGHT - 100, 50, 100), rects[0]);
+    }
+
+    @Test
+    public void anglesAreTakenModuloFullTurns() {
+        assertEquals(toSource(270), toSource(-90));
+        assertEquals(toSource(90), toSource(450));
+        assertEquals(toSource(0), toSource(360));
+        assertEquals(toSource(90), toSource(80));
+    }
+
+    @Test
+    public void mapsEveryRect() {
+        Rect[] rects = {new Rect(0, 0, 10, 10), new Rect(100, 200, 20, 30)};
+        FrameRotator.toSource(rects, 180, WIDTH, HEIGHT);
+        assertEquals(new Rect(WIDTH - 10, HEIGHT - 10, 10, 10), rects[0]);
+        assertEquals(new Rect(WIDTH - 120, HEIGHT - 230, 20, 30), rects[1]);
+    }
+
+    private static Rect toSource(double angle) {
+        return FrameRotator.toSource(new Rect[]{new Rect(12, 34, 56, 78)}, angle, WIDTH, HEIGHT)[0];
+    }
+}
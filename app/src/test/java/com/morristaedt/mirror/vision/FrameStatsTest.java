@@ -0,0 +1,106 @@
+package com.morristaedt.mirror.vision;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds frame timings on a fixed clock, as a 30fps camera would deliver them
+ */
+public class FrameStatsTest {
+
+    private static final long MILLIS = 1000000;
+    // Rounded up, so 30 frames make up a whole second
+    private static final long FRAME_NANOS = 1000000000L / 30 + 1;
+
+    private FrameStats mStats;
+    private long mNowNanos;
+
+    @Before
+    public void setUp() {
+        mStats = new FrameStats();
+        mNowNanos = 5000 * MILLIS;
+    }
+
+    @Test
+    public void noFrameRateBeforeTheFirstSecond() {
+        deliver(30, 1);
+        assertEquals(0, mStats.getCameraFps(), 0);
+        assertEquals(0, mStats.getProcessedFps(), 0);
+    }
+
+    @Test
+    public void frameRatesOverTheLastSecond() {
+        // The first frame opens the window, a second of frames later it closes
+        deliver(31, 1);
+        assertEquals(30, mStats.getCameraFps(), 0.01);
+        assertEquals(30, mStats.getProcessedFps(), 0.01);
+    }
+
+    @Test
+    public void skippedFramesOnlyCountForTheCamera() {
+        deliver(1, 1);
+        deliver(30, 3);
+        assertEquals(30, mStats.getCameraFps(), 0.01);
+        assertEquals(10, mStats.getProcessedFps(), 0.01);
+        assertEquals(11, mStats.getFrame().getCount());
+    }
+
+    @Test
+    public void frameRatesFollowTheCamera() {
+        deliver(31, 1);
+        deliver(30, 2);
+        assertEquals(30, mStats.getCameraFps(), 0.01);
+        assertEquals(15, mStats.getProcessedFps(), 0.01);
+    }
+
+    @Test
+    public void stagesGetTheirOwnHistograms() {
+        mStats.onStageTimed(VisionPipeline.Stage.DETECT, 20 * MILLIS);
+        mStats.onStageTimed(VisionPipeline.Stage.DETECT, 30 * MILLIS);
+        mStats.onStageTimed(VisionPipeline.Stage.ROTATE, MILLIS);
+
+        assertEquals(2, mStats.getStage(VisionPipeline.Stage.DETECT).getCount());
+        assertEquals(30, mStats.getStage(VisionPipeline.Stage.DETECT).getMaxMillis(), 1e-6);
+        assertEquals(1, mStats.getStage(VisionPipeline.Stage.ROTATE).getCount());
+        assertEquals(0, mStats.getStage(VisionPipeline.Stage.TRACK).getCount());
+    }
+
+    @Test
+    public void reportListsOnlyWhatRan() {
+        mStats.onStageTimed(VisionPipeline.Stage.DETECT, 20 * MILLIS);
+        mStats.recordListener(MILLIS);
+
+        String report = mStats.toString();
+        assertTrue(report, report.contains("detect p50"));
+        assertTrue(report, report.contains("listener p50"));
+        assertFalse(report, report.contains("track"));
+        assertFalse(report, report.contains("convert"));
+    }
+
+    @Test
+    public void resetClearsTheHistogramsButNotTheFrameRates() {
+        deliver(31, 1);
+        mStats.onStageTimed(VisionPipeline.Stage.DETECT, 20 * MILLIS);
+        mStats.reset();
+
+        assertEquals(0, mStats.getFrame().getCount());
+        assertEquals(0, mStats.getStage(VisionPipeline.Stage.DETECT).getCount());
+        assertEquals(30, mStats.getCameraFps(), 0.01);
+    }
+
+    /**
+     * @param frames       How many frames the camera delivers
+     * @param processEvery Process one frame out of this many, the others are skipped
+     */
+    private void deliver(int frames, int processEvery) {
+        for (int i = 0; i < frames; i++) {
+            boolean processed = i % processEvery == 0;
+            mStats.recordFrame(mNowNanos, processed ? 10 * MILLIS : 0, processed);
+            mNowNanos += FRAME_NANOS;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.morristaedt.mirror.vision;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private static final long MILLIS = 1000000;
+
+    // Edges of the first buckets, in nanoseconds
+    private static final long FIRST_EDGE = 10000;
+    private static final long SECOND_EDGE = 12500;
+
+    private LatencyHistogram mHistogram;
+
+    @Before
+    public void setUp() {
+        mHistogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        assertEquals(0, mHistogram.getCount());
+        assertEquals(0, mHistogram.getPercentileMillis(0.5), 0);
+        assertEquals(0, mHistogram.getAverageMillis(), 0);
+        assertEquals(0, mHistogram.getMaxMillis(), 0);
+    }
+
+    @Test
+    public void everythingUpToTheFirstEdgeSharesTheFirstBucket() {
+        mHistogram.record(0);
+        mHistogram.record(FIRST_EDGE);
+        mHistogram.record(SECOND_EDGE - 100);
+
+        // Two of three in the first bucket, reported as its upper edge
+        assertEquals(FIRST_EDGE / 1e6, mHistogram.getPercentileMillis(0.5), 1e-6);
+        assertEquals(FIRST_EDGE / 1e6, mHistogram.getPercentileMillis(0.66), 1e-6);
+    }
+
+    @Test
+    public void justPastAnEdgeFallsInTheNextBucket() {
+        mHistogram.record(FIRST_EDGE + 1);
+        mHistogram.record(MILLIS);
+
+        assertEquals(SECOND_EDGE / 1e6, mHistogram.getPercentileMillis(0.5), 1e-6);
+    }
+
+    @Test
+    public void percentileIsAtMostABucketHigh() {
+        mHistogram.record(MILLIS);
+        mHistogram.record(5 * MILLIS);
+
+        float median = mHistogram.getPercentileMillis(0.5);
+        assertTrue("Median " + median, median >= 1 && median <= 1.25);
+    }
+
+    @Test
+    public void percentileNeverExceedsTheMaximum() {
+        mHistogram.record(MILLIS);
+
+        assertEquals(1, mHistogram.getPercentileMillis(0.5), 1e-6);
+        assertEquals(1, mHistogram.getPercentileMillis(1), 1e-6);
+    }
+
+    @Test
+    public void percentilesOverAnEvenSpread() {
+        for (int millis = 1; millis <= 100; millis++) {
+            mHistogram.record(millis * MILLIS);
+        }
+
+        float p50 = mHistogram.getPercentileMillis(0.5);
+        float p95 = mHistogram.getPercentileMillis(0.95);
+        float p99 = mHistogram.getPercentileMillis(0.99);
+        assertTrue("p50 " + p50, p50 >= 50 && p50 <= 50 * 1.25);
+        assertTrue("p95 " + p95, p95 >= 95 && p95 <= 100);
+        assertTrue("p99 " + p99, p99 >= 99 && p99 <= 100);
+        assertEquals(100, mHistogram.getPercentileMillis(1), 1e-6);
+        assertEquals(50.5, mHistogram.getAverageMillis(), 1e-3);
+        assertEquals(100, mHistogram.getMaxMillis(), 1e-6);
+    }
+
+    @Test
+    public void lastBucketIsOpenEnded() {
+        mHistogram.record(MILLIS);
+        mHistogram.record(60 * 1000 * MILLIS);
+
+        assertEquals(60 * 1000, mHistogram.getPercentileMillis(1), 1e-3);
+    }
+
+    @Test
+    public void resetStartsOver() {
+        mHistogram.record(5 * MILLIS);
+        mHistogram.reset();
+        mHistogram.record(MILLIS);
+
+        assertEquals(1, mHistogram.getCount());
+        assertEquals(1, mHistogram.getMaxMillis(), 1e-6);
+        assertEquals(1, mHistogram.getPercentileMillis(1), 1e-6);
+    }
+}
@@ -0,0 +1,127 @@
+package com.morristaedt.mirror.vision;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds per-frame detections on a fixed 30fps clock, with the default windows: in after 300ms,
+ * out after 3s
+ */
+public class PresenceStateMachineTest {
+
+    private static final long ENTER_MILLIS = 300;
+    private static final long EXIT_MILLIS = 3000;
+    private static final long FRAME_MILLIS = 33;
+
+    private PresenceStateMachine mPresence;
+    private long mNowMillis;
+    private int mChanges;
+
+    @Before
+    public void setUp() {
+        mPresence = new PresenceStateMachine(ENTER_MILLIS, EXIT_MILLIS, 0.6f);
+        mNowMillis = 1000;
+        mChanges = 0;
+    }
+
+    @Test
+    public void startsAbsent() {
+        assertFalse(mPresence.isPresent());
+        assertEquals(PresenceStateMachine.State.ABSENT, mPresence.getState());
+    }
+
+    @Test
+    public void presentOnlyOnceTheEnterWindowHasPassed() {
+        frames(ENTER_MILLIS, true);
+        assertEquals(PresenceStateMachine.State.ENTERING, mPresence.getState());
+        assertFalse(mPresence.isPresent());
+        assertEquals(0, mChanges);
+
+        frames(3 * FRAME_MILLIS, true);
+        assertTrue(mPresence.isPresent());
+        assertEquals(PresenceStateMachine.State.PRESENT, mPresence.getState());
+        assertEquals(1, mChanges);
+    }
+
+    @Test
+    public void faceLeavingBeforeTheEnterWindowNeverCounts() {
+        frames(ENTER_MILLIS / 2, true);
+        frames(ENTER_MILLIS, false);
+        assertEquals(PresenceStateMachine.State.ABSENT, mPresence.getState());
+        assertEquals(0, mChanges);
+    }
+
+    @Test
+    public void briefDropoutDoesNotLeave() {
+        frames(2 * ENTER_MILLIS, true);
+        assertTrue(mPresence.isPresent());
+
+        // Long enough to start leaving, well short of the exit window
+        frames(10 * FRAME_MILLIS, false);
+        assertEquals(PresenceStateMachine.State.LEAVING, mPresence.getState());
+        assertTrue(mPresence.isPresent());
+
+        frames(5 * FRAME_MILLIS, true);
+        assertEquals(PresenceStateMachine.State.PRESENT, mPresence.getState());
+        assertEquals(1, mChanges);
+        assertEquals(1, mPresence.getTransitions());
+    }
+
+    @Test
+    public void goneOnceTheExitWindowHasPassed() {
+        frames(2 * ENTER_MILLIS, true);
+        frames(EXIT_MILLIS, false);
+        assertTrue(mPresence.isPresent());
+
+        frames(10 * FRAME_MILLIS, false);
+        assertFalse(mPresence.isPresent());
+        assertEquals(2, mChanges);
+        assertEquals(2, mPresence.getTransitions());
+    }
+
+    @Test
+    public void singleDetectionIsNotEnoughConfidence() {
+        frames(FRAME_MILLIS, true);
+        frames(ENTER_MILLIS, false);
+        assertEquals(PresenceStateMachine.State.ABSENT, mPresence.getState());
+        assertTrue(mPresence.getConfidence() < 0.6f);
+    }
+
+    @Test
+    public void flickeringDetectionsNeverEnter() {
+        // A face found on one frame in three never builds up the confidence to start entering
+        for (int i = 0; i < 90; i++) {
+            frame(i % 3 == 0);
+        }
+        assertEquals(PresenceStateMachine.State.ABSENT, mPresence.getState());
+        assertEquals(0, mChanges);
+    }
+
+    @Test
+    public void occasionalMissesWhileEnteringStillEnter() {
+        // Four frames in five is enough confidence to hold, so entering runs its course
+        for (int i = 0; i < 30; i++) {
+            frame(i % 5 != 4);
+        }
+        assertTrue(mPresence.isPresent());
+        assertEquals(1, mChanges);
+    }
+
+    private void frames(long millis, boolean faceDetected) {
+        long end = mNowMillis + millis;
+        while (mNowMillis < end) {
+            frame(faceDetected);
+        }
+    }
+
+    private void frame(boolean faceDetected) {
+        if (mPresence.update(faceDetected, mNowMillis)) {
+            mChanges++;
+        }
+        mNowMillis += FRAME_MILLIS;
+    }
+}
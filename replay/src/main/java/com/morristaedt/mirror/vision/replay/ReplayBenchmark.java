@@ -0,0 +1,346 @@
+package com.morristaedt.mirror.vision.replay;
+
+import com.morristaedt.mirror.vision.CascadeFaceDetector;
+import com.morristaedt.mirror.vision.DetectionScheduler;
+import com.morristaedt.mirror.vision.DutyCycleController;
+import com.morristaedt.mirror.vision.FaceDetector;
+import com.morristaedt.mirror.vision.FaceTracker;
+import com.morristaedt.mirror.vision.MotionGate;
+import com.morristaedt.mirror.vision.MotionHistoryGestures;
+import com.morristaedt.mirror.vision.ParallelFaceDetector;
+import com.morristaedt.mirror.vision.RoiFaceDetector;
+import com.morristaedt.mirror.vision.VisionPipeline;
+
+import nu.pattern.OpenCV;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays recorded frames through {@link VisionPipeline} on a desktop JVM and reports per stage
+ * latency percentiles, throughput and, given labels, precision/recall.
+ *
+ * Built by the replay module from the app's vision sources, against desktop OpenCV, which brings
+ * its own native library. Paths are relative to the project root:
+ * <pre>
+ * ./gradlew :replay:run -Pargs="app/src/main/res/raw/lbpcascade_frontalface.xml frames/ --labels frames/labels.txt --mirror"
+ * </pre>
+ * Frames are timestamped as if they arrived at --fps, so the scheduler and duty cycle behave as
+ * they would behind the camera. Record frames on a device with the frame recording setting.
+ *
+ * --threads takes a comma separated list, i.e. 1,2,4,8, and runs the whole benchmark with
+ * {@link ParallelFaceDetector} split across each thread count in turn, ending with the scaling
+ * curve. Leave out --async for this, otherwise detection time doesn't show in the frame rate.
+ *
+ * --compare takes a comma separated list of cascades instead of one, and runs each of them on
+ * every frame through {@link BackendComparison} rather than through the pipeline.
+ *
+ * --rgba adds back the frame path from before detection ran on the camera's luminance plane:
+ * every frame expanded to RGBA, rotated whole, then converted back down before the pipeline sees
+ * it. The conversions are timed as their own row and count towards the total, for comparing
+ * against a run without it.
+ */
+public class ReplayBenchmark {
+
+    private static final String USAGE = "usage: ReplayBenchmark <cascade.xml[,cascade.xml...]> <frame directory | video file>"
+            + " [--labels file] [--fps 15] [--width 320] [--face-fraction 0.1] [--rotate 0]"
+            + " [--warmup 10] [--repeat 1] [--threads 1,2,4] [--roi] [--track] [--gestures] [--mirror] [--async] [--compare] [--rgba]";
+
+    private String mCascadePath;
+    private String mFramesPath;
+    private String mLabelsPath;
+    private int mFps = 15;
+    private int mDetectionWidth = 320;
+    private float mFaceFraction = 0.1f;
+    private int mAngle;
+    private int mWarmupFrames = 10;
+    private int mRepeat = 1;
+    private int[] mThreadCounts = {1};
+    private boolean mRoi;
+    private boolean mTrack;
+    private boolean mGestures;
+    private boolean mMirror;
+    private boolean mAsync;
+    private boolean mCompare;
+    private boolean mRgba;
+
+    public static void main(String[] args) throws IOException {
+        ReplayBenchmark benchmark = new ReplayBenchmark();
+        if (!benchmark.parse(args)) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        OpenCV.loadLocally();
+        if (benchmark.mCompare) {
+            benchmark.compare();
+        } else {
+            benchmark.run();
+        }
+    }
+
+    private boolean parse(String[] args) {
+        int positional = 0;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            boolean hasValue = i + 1 < args.length;
+            if (arg.equals("--roi")) {
+                mRoi = true;
+            } else if (arg.equals("--track")) {
+                mTrack = true;
+            } else if (arg.equals("--gestures")) {
+                mGestures = true;
+            } else if (arg.equals("--mirror")) {
+                mMirror = true;
+            } else if (arg.equals("--async")) {
+                mAsync = true;
+            } else if (arg.equals("--compare")) {
+                mCompare = true;
+            } else if (arg.equals("--rgba")) {
+                mRgba = true;
+            } else if (arg.equals("--labels") && hasValue) {
+                mLabelsPath = args[++i];
+            } else if (arg.equals("--fps") && hasValue) {
+                mFps = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--width") && hasValue) {
+                mDetectionWidth = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--face-fraction") && hasValue) {
+                mFaceFraction = Float.parseFloat(args[++i]);
+            } else if (arg.equals("--rotate") && hasValue) {
+                mAngle = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--warmup") && hasValue) {
+                mWarmupFrames = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--repeat") && hasValue) {
+                mRepeat = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--threads") && hasValue) {
+                String[] counts = args[++i].split(",");
+                mThreadCounts = new int[counts.length];
+                for (int count = 0; count < counts.length; count++) {
+                    mThreadCounts[count] = Integer.parseInt(counts[count].trim());
+                }
+            } else if (arg.startsWith("--")) {
+                return false;
+            } else if (positional == 0) {
+                mCascadePath = arg;
+                positional++;
+            } else if (positional == 1) {
+                mFramesPath = arg;
+                positional++;
+            } else {
+                return false;
+            }
+        }
+        return positional == 2 && mFps > 0 && mRepeat > 0;
+    }
+
+    private void run() throws IOException {
+        double[] framesPerSecond = new double[mThreadCounts.length];
+        for (int i = 0; i < mThreadCounts.length; i++) {
+            if (mThreadCounts.length > 1) {
+                System.out.println("== " + mThreadCounts[i] + " detection threads");
+            }
+            framesPerSecond[i] = run(mThreadCounts[i]);
+            System.out.println();
+        }
+
+        if (mThreadCounts.length > 1) {
+            System.out.println(String.format("%8s %10s %8s", "threads", "frames/s", "speedup"));
+            for (int i = 0; i < mThreadCounts.length; i++) {
+                System.out.println(String.format("%8d %10.1f %7.2fx", mThreadCounts[i], framesPerSecond[i],
+                        framesPerSecond[0] == 0 ? 0 : framesPerSecond[i] / framesPerSecond[0]));
+            }
+        }
+    }
+
+    private void compare() throws IOException {
+        BackendComparison comparison = new BackendComparison(mDetectionWidth, mFaceFraction, mAngle);
+        for (String path : mCascadePath.split(",")) {
+            String name = new File(path).getName().replace(".xml", "");
+            comparison.addBackend(name, new CascadeFaceDetector(loadCascade(path)));
+        }
+
+        FrameLabels labels = mLabelsPath != null ? new FrameLabels(new File(mLabelsPath)) : null;
+        comparison.run(openSource(), labels);
+        System.out.print(comparison.getReport());
+        comparison.release();
+    }
+
+    /**
+     * Replay every frame through a fresh pipeline and print its report
+     *
+     * @return Frames per second of pipeline time
+     */
+    private double run(int threads) throws IOException {
+        final CascadeClassifier classifier = loadCascade(mCascadePath);
+
+        FrameLabels labels = mLabelsPath != null ? new FrameLabels(new File(mLabelsPath)) : null;
+        final LatencySamples[] stages = new LatencySamples[VisionPipeline.Stage.values().length];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencySamples();
+        }
+        LatencySamples frames = new LatencySamples();
+
+        FaceDetector detector;
+        if (threads > 1) {
+            detector = new ParallelFaceDetector(new ParallelFaceDetector.DetectorFactory() {
+                private boolean mFirst = true;
+
+                @Override
+                public CascadeFaceDetector newDetector() {
+                    if (mFirst) {
+                        mFirst = false;
+                        return new CascadeFaceDetector(classifier);
+                    }
+                    try {
+                        return new CascadeFaceDetector(loadCascade(mCascadePath));
+                    } catch (IOException e) {
+                        return null;
+                    }
+                }
+
+                @Override
+                public void recycleDetector(CascadeFaceDetector detector) {
+                    // Every run loads its own cascades, the garbage collector frees these
+                }
+            }, threads);
+        } else {
+            detector = new CascadeFaceDetector(classifier);
+        }
+        if (mRoi) {
+            detector = new RoiFaceDetector(detector);
+        }
+        VisionPipeline pipeline = new VisionPipeline(detector, mDetectionWidth, mFaceFraction);
+        pipeline.setAsync(mAsync);
+        pipeline.setMapToSource(true);
+        // The RGBA path rotates the whole frame itself
+        pipeline.setRotation(mRgba ? 0 : mAngle);
+        if (mTrack) {
+            pipeline.setTracker(new FaceTracker());
+        }
+        if (mGestures) {
+            pipeline.setGestures(new MotionHistoryGestures());
+        }
+        if (mMirror) {
+            // The same gating MirrorActivity runs with its default settings
+            pipeline.setScheduler(new DetectionScheduler());
+            pipeline.setMotionGate(new MotionGate(0.02, 0.05), 3000);
+            pipeline.setDutyCycle(new DutyCycleController(60 * 1000, 1000));
+        }
+
+        final boolean[] timing = new boolean[1];
+        pipeline.setStageTimingListener(new VisionPipeline.StageTimingListener() {
+            @Override
+            public void onStageTimed(VisionPipeline.Stage stage, long nanos) {
+                if (timing[0]) {
+                    stages[stage.ordinal()].add(nanos);
+                }
+            }
+        });
+
+        Mat gray = new Mat();
+        Mat rgba = new Mat();
+        Mat rotated = new Mat();
+        Mat rgb = new Mat();
+        Mat converted = new Mat();
+        LatencySamples conversions = new LatencySamples();
+        long frameCount = 0;
+        long skipped = 0;
+        long wallNanos = 0;
+        for (int run = 0; run < mRepeat; run++) {
+            FrameSource source = openSource();
+            boolean started = false;
+            try {
+                while (source.read(gray)) {
+                    if (!started) {
+                        pipeline.start(gray.cols(), gray.rows());
+                        started = true;
+                    }
+
+                    long nowMillis = frameCount * 1000 / mFps;
+                    timing[0] = frameCount >= mWarmupFrames;
+                    long start = System.nanoTime();
+                    boolean processed;
+                    if (mRgba) {
+                        // The camera hands over RGBA either way, so that part isn't timed
+                        Imgproc.cvtColor(gray, rgba, Imgproc.COLOR_GRAY2RGBA);
+                        start = System.nanoTime();
+                        Mat rotation = Imgproc.getRotationMatrix2D(new Point(rgba.cols() / 2, rgba.rows() / 2), mAngle, 1);
+                        Imgproc.warpAffine(rgba, rotated, rotation, rgba.size());
+                        rotation.release();
+                        Imgproc.cvtColor(rotated, rgb, Imgproc.COLOR_RGBA2RGB);
+                        // What the cascade did with the color image it was given
+                        Imgproc.cvtColor(rgb, converted, Imgproc.COLOR_RGB2GRAY);
+                        if (timing[0]) {
+                            conversions.add(System.nanoTime() - start);
+                        }
+                        processed = pipeline.process(converted, nowMillis);
+                    } else {
+                        processed = pipeline.process(gray, nowMillis);
+                    }
+                    long elapsed = System.nanoTime() - start;
+
+                    if (timing[0]) {
+                        frames.add(elapsed);
+                        wallNanos += elapsed;
+                    }
+                    if (!processed) {
+                        skipped++;
+                    } else if (labels != null && run == 0) {
+                        labels.score(source.getFrameName(), pipeline.getFaces());
+                    }
+                    frameCount++;
+                }
+            } finally {
+                source.release();
+                if (started) {
+                    pipeline.stop();
+                }
+            }
+        }
+
+        double framesPerSecond = wallNanos == 0 ? 0 : frames.size() * 1e9 / wallNanos;
+        System.out.println(String.format("%d frames (%d skipped by the duty cycle), %.1f frames/s of pipeline time",
+                frameCount, skipped, framesPerSecond));
+        System.out.println(LatencySamples.header("stage"));
+        for (VisionPipeline.Stage stage : VisionPipeline.Stage.values()) {
+            System.out.println(stages[stage.ordinal()].format(stage.name()));
+        }
+        if (mRgba) {
+            System.out.println(conversions.format("RGBA"));
+        }
+        System.out.println(frames.format("TOTAL"));
+        System.out.println(pipeline.getStats(frameCount * 1000 / mFps));
+        if (labels != null) {
+            System.out.println(labels);
+        }
+
+        pipeline.release();
+        gray.release();
+        rgba.release();
+        rotated.release();
+        rgb.release();
+        converted.release();
+        return framesPerSecond;
+    }
+
+    private static CascadeClassifier loadCascade(String path) throws IOException {
+        CascadeClassifier classifier = new CascadeClassifier(path);
+        if (classifier.empty()) {
+            throw new IOException("Can't load cascade " + path);
+        }
+        return classifier;
+    }
+
+    private FrameSource openSource() {
+        File frames = new File(mFramesPath);
+        if (frames.isDirectory()) {
+            return new ImageDirectorySource(frames);
+        }
+        return new VideoFileSource(mFramesPath);
+    }
+}
@@ -0,0 +1,47 @@
+package com.morristaedt.mirror.vision.replay;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+
+/**
+ * Replays a video file. Frames are named by their index, starting at 0.
+ */
+public class VideoFileSource implements FrameSource {
+
+    private final VideoCapture mCapture;
+    private final Mat mColorFrame = new Mat();
+    private int mIndex = -1;
+
+    public VideoFileSource(String path) {
+        mCapture = new VideoCapture(path);
+        if (!mCapture.isOpened()) {
+            throw new IllegalArgumentException("Can't open video " + path);
+        }
+    }
+
+    @Override
+    public boolean read(Mat gray) {
+        if (!mCapture.read(mColorFrame) || mColorFrame.empty()) {
+            return false;
+        }
+        mIndex++;
+        if (mColorFrame.channels() == 1) {
+            mColorFrame.copyTo(gray);
+        } else {
+            Imgproc.cvtColor(mColorFrame, gray, Imgproc.COLOR_BGR2GRAY);
+        }
+        return true;
+    }
+
+    @Override
+    public String getFrameName() {
+        return String.valueOf(mIndex);
+    }
+
+    @Override
+    public void release() {
+        mCapture.release();
+        mColorFrame.release();
+    }
+}